@@ -0,0 +1,494 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Minimax search with alpha beta pruning, as used by OthelloAIDonathello.
+ *
+ * The search walks the tree on a single GameState, making and taking back moves,
+ * and keeps the moves of each ply in a reusable buffer, so a search allocates
+ * nothing per node. Results of inner nodes are stored in a transposition table
+ * shared with earlier searches. Utilities come from the evaluator's getUtility.
+ * The moves of each node are tried in the order given by {@link MoveOrdering}.
+ *
+ * If a ForkJoinPool is set, nodes at least {@link #MIN_SPLIT_DEPTH} from the
+ * horizon are searched in parallel ("young brothers wait"): the first child is
+ * searched on its own, and the remaining children are then handed to the pool,
+ * each on its own copy of the state. The children read the bounds of the node
+ * when they start and report their result back to it, and once one of them
+ * causes a cutoff the others stop.
+ *
+ * If SearchStats.ENABLED, the search counts leaves, cutoffs and transposition
+ * table probes into the statistics returned by {@link #getStats()}.
+ */
+public class AlphaBetaSearch {
+
+    /** Nodes closer to the horizon than this are always searched serially. */
+    public static final int MIN_SPLIT_DEPTH = 3;
+
+    /**
+     * State shared by the root search and the searches it splits into.
+     */
+    private static final class Shared {
+        final OthelloAIDonathello evaluator;
+        final TranspositionTable transpositionTable;
+        ForkJoinPool pool;
+        MoveOrdering ordering;
+        boolean orderMoves = true;
+        volatile long deadline;
+        volatile boolean canAbort;
+        volatile boolean aborted;
+
+        Shared(OthelloAIDonathello evaluator, TranspositionTable transpositionTable) {
+            this.evaluator = evaluator;
+            this.transpositionTable = transpositionTable;
+        }
+
+        /**
+         * Returns whether the deadline has passed (if the search may stop), or the
+         * thread was interrupted, e.g. by a caller that gave up waiting.
+         */
+        boolean timeUp() {
+            return canAbort && System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted();
+        }
+    }
+
+    /**
+     * A node whose remaining children are being searched in parallel.
+     */
+    private static final class SplitPoint {
+        final SplitPoint parent;
+        final boolean maximizingPlayer;
+        double alpha;
+        double beta;
+        double value;
+        int bestMove;
+        volatile boolean cutoff;
+
+        SplitPoint(SplitPoint parent, boolean maximizingPlayer, double alpha, double beta, double value, int bestMove) {
+            this.parent = parent;
+            this.maximizingPlayer = maximizingPlayer;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.value = value;
+            this.bestMove = bestMove;
+        }
+
+        /**
+         * Records the result of searching one child, in the same way as the
+         * serial loop in alphaBeta.
+         */
+        synchronized void update(double found, int move) {
+            if (cutoff) {
+                return;
+            }
+            if (maximizingPlayer) {
+                if (found > value) {
+                    value = found;
+                    bestMove = move;
+                }
+                if (value >= beta) {
+                    cutoff = true;
+                }
+                alpha = Math.max(alpha, value);
+            } else {
+                if (found < value) {
+                    value = found;
+                    bestMove = move;
+                }
+                if (value <= alpha) {
+                    cutoff = true;
+                }
+                beta = Math.min(beta, value);
+            }
+        }
+
+        /**
+         * Returns true if this node or any node above it has been cut off.
+         */
+        boolean cutoffInChain() {
+            for (SplitPoint sp = this; sp != null; sp = sp.parent) {
+                if (sp.cutoff) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Searches one of the remaining children of a split point.
+     */
+    private static final class SiblingTask extends RecursiveAction {
+        static final long serialVersionUID = 1;
+
+        final AlphaBetaSearch search;
+        final GameState state;
+        final int move;
+        final int depth;
+        final int ply;
+
+        SiblingTask(AlphaBetaSearch search, GameState state, int move, int depth, int ply) {
+            this.search = search;
+            this.state = state;
+            this.move = move;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        @Override
+        protected void compute() {
+            SplitPoint sp = search.splitPoint;
+            Shared shared = search.shared;
+            if (shared.timeUp()) {
+                shared.aborted = true;
+            }
+            if (sp.cutoffInChain() || shared.aborted) {
+                return;
+            }
+            double alpha;
+            double beta;
+            synchronized (sp) {
+                alpha = sp.alpha;
+                beta = sp.beta;
+            }
+            state.makeMove(move);
+            double found = search.alphaBeta(state, depth, ply, !sp.maximizingPlayer, alpha, beta);
+            if (!search.stopped()) {
+                sp.update(found, move);
+            }
+        }
+    }
+
+    private final Shared shared;
+    private final SplitPoint splitPoint;
+    private final TranspositionTable.Entry ttEntry = new TranspositionTable.Entry();
+
+    // moveBuffers[ply] holds the legal moves (as square indices) at that ply of the search
+    private int[][] moveBuffers = new int[0][];
+    private long[] orderKeys = new long[0];
+    private int rootBestSquare;
+    private long nodes;
+    private SearchStats stats = new SearchStats();
+
+    /**
+     * Creates a search that evaluates leaves with the given AI and stores results
+     * in the given table.
+     */
+    public AlphaBetaSearch(OthelloAIDonathello evaluator, TranspositionTable transpositionTable) {
+        this.shared = new Shared(evaluator, transpositionTable);
+        this.splitPoint = null;
+    }
+
+    private AlphaBetaSearch(AlphaBetaSearch parent, SplitPoint splitPoint) {
+        this.shared = parent.shared;
+        this.splitPoint = splitPoint;
+    }
+
+    /**
+     * Sets the pool used to search in parallel, or null to search serially.
+     */
+    public void setPool(ForkJoinPool pool) {
+        shared.pool = pool;
+    }
+
+    /**
+     * Sets whether moves are ordered by {@link MoveOrdering}. If not, they are
+     * tried in the order given by GameState.legalMoves.
+     */
+    public void setMoveOrdering(boolean orderMoves) {
+        shared.orderMoves = orderMoves;
+    }
+
+    /**
+     * Prepares for the search of a new position: killer moves are forgotten and
+     * history scores are aged.
+     */
+    public void newSearch() {
+        if (shared.ordering != null) {
+            shared.ordering.newSearch();
+        }
+    }
+
+    /**
+     * Sets the value of System.nanoTime() at which the search stops, and whether
+     * it may stop at all. A stopped search returns a meaningless value, and
+     * {@link #isAborted()} returns true. Interrupting the searching thread stops
+     * the search even if it may not stop at the deadline.
+     */
+    public void setDeadline(long deadline, boolean canAbort) {
+        shared.deadline = deadline;
+        shared.canAbort = canAbort;
+        shared.aborted = false;
+    }
+
+    /**
+     * Moves the deadline of a running search, e.g. from another thread. Unlike
+     * setDeadline this does not start a new search.
+     */
+    public void stopAt(long deadline) {
+        shared.deadline = deadline;
+        shared.canAbort = true;
+    }
+
+    public boolean isAborted() {
+        return shared.aborted;
+    }
+
+    /**
+     * Returns the number of nodes visited since the search was created, including
+     * nodes visited by the parallel workers.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the counters of the tree kept since the last call to resetStats,
+     * including those of the parallel workers. Only counted if SearchStats.ENABLED.
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    public void resetStats() {
+        stats = new SearchStats();
+    }
+
+    /**
+     * Returns the squares of the principal variation of s: the best move stored in
+     * the transposition table for s, then for the position after it, and so on,
+     * for at most maxLength moves. s is unchanged when the method returns.
+     */
+    public int[] principalVariation(GameState s, int maxLength) {
+        TranspositionTable.Entry entry = new TranspositionTable.Entry();
+        int[] moves = new int[s.getSquareCount()];
+        int[] pv = new int[maxLength];
+        int length = 0;
+        while (length < maxLength && shared.transpositionTable.probe(s.getHash(), entry) && entry.move >= 0) {
+            int n = s.legalMoves(moves);
+            boolean legal = false;
+            for (int i = 0; i < n && !legal; i++) {
+                legal = moves[i] == entry.move;
+            }
+            if (!legal) {
+                break; // a different position with the same hash index
+            }
+            s.makeMove(entry.move);
+            pv[length++] = entry.move;
+        }
+        for (int i = 0; i < length; i++) {
+            s.unmakeMove();
+        }
+        return Arrays.copyOf(pv, length);
+    }
+
+    /**
+     * Returns the best move found at the root by the last call to search, or -1
+     * if there were no legal moves.
+     */
+    public int getBestSquare() {
+        return rootBestSquare;
+    }
+
+    /**
+     * Searches s to the given depth and returns its utility. s is unchanged when
+     * the method returns.
+     */
+    public double search(GameState s, int depth, boolean maximizingPlayer, double alpha, double beta) {
+        ensureMoveBuffers(depth + 1, s.getSquareCount());
+        if (shared.ordering == null || shared.ordering.squares != s.getSquareCount()) {
+            int size = s.getBoard().length;
+            double[] weights = new double[s.getSquareCount()];
+            for (int sq = 0; sq < weights.length; sq++) {
+                weights[sq] = shared.evaluator.getWeightedTile(sq / size, sq % size);
+            }
+            shared.ordering = new MoveOrdering(weights);
+        }
+        rootBestSquare = -1;
+        ForkJoinPool pool = shared.pool;
+        if (pool == null) {
+            return alphaBeta(s, depth, 0, maximizingPlayer, alpha, beta);
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> alphaBeta(s, depth, 0, maximizingPlayer, alpha, beta)));
+    }
+
+    /**
+     * Returns true if this search should stop, because the time is up or because
+     * a node it is working for has been cut off by another worker.
+     */
+    private boolean stopped() {
+        return shared.aborted || (splitPoint != null && splitPoint.cutoffInChain());
+    }
+
+    /**
+     * Allocation free part of the search. Moves are handled as square indices in
+     * the buffer for the current ply, and the best move at the root is stored in
+     * rootBestSquare.
+     *
+     * Results of inner nodes are stored in the transposition table, and a stored
+     * result that was searched at least as deep is used instead of searching the
+     * node again.
+     *
+     * @param ply Number of moves made since the root of the search.
+     * @return utility (as a double)
+     */
+    private double alphaBeta(GameState s, int depth, int ply, boolean maximizingPlayer, double alpha, double beta) {
+        if ((++nodes & 1023) == 0 && shared.timeUp()) {
+            shared.aborted = true;
+        }
+        if (stopped()) {
+            return 0;
+        }
+
+        TranspositionTable transpositionTable = shared.transpositionTable;
+        long hash = s.getHash();
+        double alphaOrig = alpha;
+        double betaOrig = beta;
+        int hashMove = -1;
+        if (SearchStats.ENABLED && depth > 0) {
+            stats.ttProbes++;
+        }
+        if (depth > 0 && transpositionTable.probe(hash, ttEntry)) {
+            hashMove = ttEntry.move;
+            if (SearchStats.ENABLED) {
+                stats.ttHits++;
+            }
+            if (ply > 0 && ttEntry.depth >= depth) {
+                double score = ttEntry.score;
+                if (ttEntry.bound == TranspositionTable.EXACT) {
+                    if (SearchStats.ENABLED) {
+                        stats.ttCutoffs++;
+                    }
+                    return score;
+                } else if (ttEntry.bound == TranspositionTable.LOWER) {
+                    alpha = Math.max(alpha, score);
+                } else {
+                    beta = Math.min(beta, score);
+                }
+                if (alpha >= beta) {
+                    if (SearchStats.ENABLED) {
+                        stats.ttCutoffs++;
+                    }
+                    return score;
+                }
+            }
+        }
+
+        int[] moves = moveBuffers[ply];
+        int nLegalMoves = depth == 0 ? 0 : s.legalMoves(moves);
+        if (nLegalMoves == 0) {
+            if (SearchStats.ENABLED) {
+                stats.leaves++;
+            }
+            return shared.evaluator.getUtility(s);
+        }
+        MoveOrdering ordering = shared.ordering;
+        if (shared.orderMoves) {
+            if (orderKeys.length < nLegalMoves) {
+                orderKeys = new long[moves.length];
+            }
+            ordering.order(moves, nLegalMoves, hashMove, ply, orderKeys);
+        }
+
+        int bestMove = -1;
+        boolean cutoff = false;
+        int cutoffAt = 0;
+        double value = maximizingPlayer ? -Double.MAX_VALUE : Double.MAX_VALUE;
+
+        for (int i = 0; i < nLegalMoves; i++) {
+            if (i == 1 && shared.pool != null && depth >= MIN_SPLIT_DEPTH) {
+                // The eldest brother is done, search the rest in parallel
+                SplitPoint sp = new SplitPoint(splitPoint, maximizingPlayer, alpha, beta, value, bestMove);
+                List<SiblingTask> tasks = new ArrayList<>(nLegalMoves - 1);
+                for (int j = 1; j < nLegalMoves; j++) {
+                    AlphaBetaSearch sibling = new AlphaBetaSearch(this, sp);
+                    sibling.ensureMoveBuffers(ply + depth + 1, s.getSquareCount());
+                    tasks.add(new SiblingTask(sibling, new GameState(s), moves[j], depth - 1, ply + 1));
+                }
+                ForkJoinTask.invokeAll(tasks);
+                for (SiblingTask task : tasks) {
+                    nodes += task.search.nodes;
+                    if (SearchStats.ENABLED) {
+                        stats.add(task.search.stats);
+                    }
+                }
+                if (stopped()) {
+                    return 0;
+                }
+                value = sp.value;
+                bestMove = sp.bestMove;
+                cutoff = sp.cutoff;
+                cutoffAt = 1;
+                break;
+            }
+
+            int moveTaken = moves[i];
+            s.makeMove(moveTaken);
+            var bestValueFound = alphaBeta(s, depth - 1, ply + 1, !maximizingPlayer, alpha, beta);
+            s.unmakeMove();
+            if (stopped()) {
+                return 0;
+            }
+            if (maximizingPlayer) {
+                if (bestValueFound > value) {
+                    value = bestValueFound;
+                    bestMove = moveTaken;
+                }
+
+                if (value >= beta) {
+                    cutoff = true;
+                    cutoffAt = i;
+                    break;
+                }
+
+                alpha = Math.max(alpha, value);
+
+            } else {
+                if (bestValueFound < value) {
+                    value = bestValueFound;
+                    bestMove = moveTaken;
+                }
+
+                if (value <= alpha) {
+                    cutoff = true;
+                    cutoffAt = i;
+                    break;
+                }
+
+                beta = Math.min(beta, value);
+            }
+        }
+
+        if (SearchStats.ENABLED) {
+            stats.interiorNodes++;
+            if (cutoff) {
+                stats.cutoffs++;
+                if (cutoffAt == 0) {
+                    stats.firstMoveCutoffs++;
+                }
+            }
+        }
+        if (cutoff && shared.orderMoves) {
+            ordering.recordCutoff(bestMove, ply, depth);
+        }
+
+        int bound = value <= alphaOrig ? TranspositionTable.UPPER
+                : value >= betaOrig ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        transpositionTable.store(hash, depth, bound, value, bestMove);
+
+        if (ply == 0) {
+            rootBestSquare = bestMove;
+        }
+        return value;
+    }
+
+    private void ensureMoveBuffers(int plies, int squares) {
+        if (moveBuffers.length < plies || moveBuffers[0].length < squares) {
+            moveBuffers = new int[plies][squares];
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Micro benchmarks for the game engine and the search of OthelloAIDonathello.
+ *
+ * Every benchmark runs over the same fixed corpus of midgame positions (see
+ * {@link PositionCorpus}) for boards of size 8, 12 and 16. A benchmark is warmed
+ * up first, then timed for a number of iterations, and the mean and standard
+ * deviation of the time per operation over the iterations are reported. Results
+ * of the operations are accumulated into a sink so the JIT cannot remove them.
+ *
+ * Usage: java Benchmarks [name filter] [iterations] [ms per iteration]
+ * Defaults: all benchmarks, 5 iterations of 1000 ms, after 3 warmup iterations.
+ */
+public class Benchmarks {
+
+    private static final int[] SIZES = {8, 12, 16};
+    private static final int POSITIONS = 64;
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /**
+     * A benchmarked operation. Runs once on the given position and returns a
+     * value that depends on the work done.
+     */
+    private interface Operation {
+        long run(GameState s, Fixture f);
+    }
+
+    /**
+     * Per size data that operations may use, created before timing starts.
+     */
+    private static final class Fixture {
+        final int size;
+        final List<GameState> positions;
+        final List<int[][]> boards = new ArrayList<>();
+        final int[] moves;
+        final OthelloAIDonathello ai = new OthelloAIDonathello(0);
+        final RandomAI randomAI = new RandomAI(2018);
+        final PlayoutBoard playout;
+        final SplittableRandom random = new SplittableRandom(2018);
+
+        Fixture(int size) {
+            this.size = size;
+            this.positions = PositionCorpus.midgame(size, POSITIONS, 2018);
+            for (GameState s : positions) {
+                boards.add(new GameState(s).getBoard());
+            }
+            this.moves = new int[size * size];
+            this.playout = new PlayoutBoard(size);
+            // decideMove sets up the heatmap; the AI has no transposition table to
+            // speak of, so repeated searches of the same position are not free
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                ai.setMaxDepth(1);
+                ai.decideMove(new GameState(positions.get(0)));
+            } finally {
+                System.setOut(out);
+            }
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long iterationMillis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+        System.out.println("benchmark                 size        ns/op      +/-");
+        for (int size : SIZES) {
+            Fixture f = new Fixture(size);
+            bench("legalMoves", f, filter, iterations, iterationMillis,
+                    (s, x) -> s.legalMoves().size());
+            bench("legalMoves(int[])", f, filter, iterations, iterationMillis,
+                    (s, x) -> s.legalMoves(x.moves));
+            bench("insertToken", f, filter, iterations, iterationMillis, (s, x) -> {
+                s.legalMoves(x.moves);
+                boolean inserted = s.insertToken(s.position(x.moves[0]));
+                s.unmakeMove();
+                return inserted ? 1 : 0;
+            });
+            bench("makeMove+unmakeMove", f, filter, iterations, iterationMillis, (s, x) -> {
+                int n = s.legalMoves(x.moves);
+                for (int i = 0; i < n; i++) {
+                    s.makeMove(x.moves[i]);
+                    s.unmakeMove();
+                }
+                return n;
+            });
+            bench("isFinished", f, filter, iterations, iterationMillis,
+                    (s, x) -> s.isFinished() ? 1 : 0);
+            bench("GameState(int[][],int)", f, filter, iterations, iterationMillis,
+                    (s, x) -> new GameState(x.boards.get(0), 1).getPlayerInTurn());
+            bench("GameState(GameState)", f, filter, iterations, iterationMillis,
+                    (s, x) -> new GameState(s).getPlayerInTurn());
+            bench("countWeightedTokens", f, filter, iterations, iterationMillis,
+                    (s, x) -> (long) x.ai.countWeightedTokens(s)[0]);
+            bench("perft(3)", f, filter, iterations, iterationMillis,
+                    (s, x) -> perft(s, 3, new int[4][x.moves.length]));
+            bench("minimax(3), no TT", f, filter, iterations, iterationMillis, (s, x) -> {
+                long before = x.ai.getNodes();
+                x.ai.minimax(s, 3, true, -Double.MAX_VALUE, Double.MAX_VALUE);
+                return x.ai.getNodes() - before;
+            });
+            bench("RandomAI.decideMove", f, filter, iterations, iterationMillis,
+                    (s, x) -> x.randomAI.decideMove(s).col);
+            bench("random playout", f, filter, iterations, iterationMillis, (s, x) -> {
+                x.playout.set(s);
+                return x.playout.playRandom(x.random);
+            });
+            reportNodeRates(f, filter, iterationMillis);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Counts the leaves of the game tree below s to the given depth. A pass counts
+     * as a move, and a finished game as a leaf.
+     */
+    public static long perft(GameState s, int depth, int[][] moveBuffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = moveBuffers[depth];
+        int n = s.legalMoves(moves);
+        if (n == 0) {
+            s.makePass();
+            boolean finished = s.legalMoves(moves) == 0;
+            long leaves = finished ? 1 : perft(s, depth - 1, moveBuffers);
+            s.unmakeMove();
+            return leaves;
+        }
+        long leaves = 0;
+        for (int i = 0; i < n; i++) {
+            s.makeMove(moves[i]);
+            leaves += perft(s, depth - 1, moveBuffers);
+            s.unmakeMove();
+        }
+        return leaves;
+    }
+
+    private static void bench(String name, Fixture f, String filter, int iterations, long iterationMillis,
+            Operation op) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        List<GameState> states = new ArrayList<>();
+        for (GameState s : f.positions) {
+            GameState copy = new GameState(s);
+            copy.setSquareWeights(f.ai.getSquareWeights());
+            states.add(copy);
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(states, f, op, iterationMillis);
+        }
+        double[] results = new double[iterations];
+        double mean = 0;
+        for (int i = 0; i < iterations; i++) {
+            results[i] = iteration(states, f, op, iterationMillis);
+            mean += results[i] / iterations;
+        }
+        double variance = 0;
+        for (double r : results) {
+            variance += (r - mean) * (r - mean) / Math.max(1, iterations - 1);
+        }
+        System.out.printf("%-25s %4d %12.1f %8.1f%n", name, f.size, mean, Math.sqrt(variance));
+    }
+
+    /**
+     * Runs the operation over the corpus until the time is up and returns the
+     * nanoseconds per operation.
+     */
+    private static double iteration(List<GameState> states, Fixture f, Operation op, long millis) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000;
+        long now;
+        do {
+            for (GameState s : states) {
+                sink += op.run(s, f);
+            }
+            ops += states.size();
+            now = System.nanoTime();
+        } while (now < end);
+        return (double) (now - start) / ops;
+    }
+
+    /**
+     * Reports perft nodes per second and the nodes per second of a full
+     * decideMove by OthelloAIDonathello.
+     */
+    private static void reportNodeRates(Fixture f, String filter, long iterationMillis) {
+        if (!"nodes/s".contains(filter)) {
+            return;
+        }
+        int[][] buffers = new int[5][f.moves.length];
+        long leaves = 0;
+        long start = System.nanoTime();
+        for (GameState s : f.positions) {
+            leaves += perft(new GameState(s), 4, buffers);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-25s %4d %12.0f%n", "perft(4) leaves/s", f.size, leaves / seconds);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long nodes = 0;
+        start = System.nanoTime();
+        try {
+            for (GameState s : f.positions) {
+                OthelloAIDonathello ai = new OthelloAIDonathello(16);
+                ai.setMoveTime(iterationMillis / 10);
+                ai.decideMove(s);
+                nodes += ai.getNodes();
+            }
+        } finally {
+            System.setOut(out);
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-25s %4d %12.0f%n", "decideMove nodes/s", f.size, nodes / seconds);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Move generation and flipping for the standard 8x8 board using 64-bit masks.
+ *
+ * A square is mapped to bit {@code col * 8 + row}, so iterating the bits of a
+ * mask from least to most significant visits the squares in the same order as
+ * the nested col/row loops over {@code GameState.getBoard()}.
+ *
+ * Moving one step along a row is a shift by 1, moving one step along a column
+ * is a shift by 8, and the diagonals are shifts by 7 and 9. Shifts that change
+ * the row are masked so that discs do not wrap from row 7 of one column into
+ * row 0 of the next.
+ */
+public final class Bitboard {
+
+    public static final int SIZE = 8;
+
+    /** All squares except those in row 0. */
+    static final long NOT_ROW_0 = 0xFEFEFEFEFEFEFEFEL;
+    /** All squares except those in row 7. */
+    static final long NOT_ROW_7 = 0x7F7F7F7F7F7F7F7FL;
+
+    // For each of the four line orientations: shift amount, and the masks that
+    // must be applied after shifting left (<<) and right (>>>) respectively.
+    private static final int[] SHIFTS = {1, 8, 9, 7};
+    private static final long[] LEFT_MASKS = {NOT_ROW_0, -1L, NOT_ROW_0, NOT_ROW_7};
+    private static final long[] RIGHT_MASKS = {NOT_ROW_7, -1L, NOT_ROW_7, NOT_ROW_0};
+
+    private Bitboard() {
+    }
+
+    /**
+     * Returns the mask of squares where the player owning {@code own} can put a
+     * token, i.e. empty squares that capture at least one disc of {@code opp}.
+     */
+    public static long legalMoves(long own, long opp) {
+        long empty = ~(own | opp);
+        long moves = 0;
+        for (int d = 0; d < 4; d++) {
+            int s = SHIFTS[d];
+
+            long mask = LEFT_MASKS[d];
+            long o = opp & mask;
+            long t = (own << s) & o;
+            t |= (t << s) & o;
+            t |= (t << s) & o;
+            t |= (t << s) & o;
+            t |= (t << s) & o;
+            t |= (t << s) & o;
+            moves |= (t << s) & mask & empty;
+
+            mask = RIGHT_MASKS[d];
+            o = opp & mask;
+            t = (own >>> s) & o;
+            t |= (t >>> s) & o;
+            t |= (t >>> s) & o;
+            t |= (t >>> s) & o;
+            t |= (t >>> s) & o;
+            t |= (t >>> s) & o;
+            moves |= (t >>> s) & mask & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Returns the mask of opponent discs that are turned if the player owning
+     * {@code own} puts a token on square {@code sq}. The result is 0 if the move
+     * does not capture anything.
+     */
+    public static long flips(long own, long opp, int sq) {
+        long placed = 1L << sq;
+        long flips = 0;
+        for (int d = 0; d < 4; d++) {
+            int s = SHIFTS[d];
+
+            long mask = LEFT_MASKS[d];
+            long line = 0;
+            long x = (placed << s) & mask;
+            while ((x & opp) != 0) {
+                line |= x;
+                x = (x << s) & mask;
+            }
+            if ((x & own) != 0)
+                flips |= line;
+
+            mask = RIGHT_MASKS[d];
+            line = 0;
+            x = (placed >>> s) & mask;
+            while ((x & opp) != 0) {
+                line |= x;
+                x = (x >>> s) & mask;
+            }
+            if ((x & own) != 0)
+                flips |= line;
+        }
+        return flips;
+    }
+
+    /**
+     * Returns the square index for the given column and row.
+     */
+    public static int square(int col, int row) {
+        return col * SIZE + row;
+    }
+}
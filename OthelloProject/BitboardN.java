@@ -0,0 +1,232 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Move generation and flipping for boards of any size, using bitsets packed into
+ * {@code long[]} arrays.
+ *
+ * As in {@link Bitboard}, square (col, row) is mapped to bit {@code col * size + row},
+ * where bit i lives in word {@code i / 64}. A step along a row is a shift by 1, a step
+ * along a column a shift by {@code size}, and the diagonals are shifts by
+ * {@code size - 1} and {@code size + 1}. After each shift the result is masked so that
+ * discs do not wrap around between the first and the last row, and no bits beyond the
+ * last square are set.
+ *
+ * Instances only hold precomputed, immutable tables and can be shared between threads;
+ * callers supply the scratch space. Use {@link #forSize(int)} to get the instance for a
+ * given board size.
+ */
+public final class BitboardN {
+
+    private static final ConcurrentHashMap<Integer, BitboardN> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Number of directions a line of discs can run in. */
+    public static final int DIRECTIONS = 8;
+
+    private static final int[] DELTA_COL = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final int[] DELTA_ROW = {1, -1, 0, 0, 1, -1, -1, 1};
+
+    /** Number of columns (and rows) on the board. */
+    public final int size;
+    /** Number of squares on the board. */
+    public final int squares;
+    /** Number of longs in a bitset of the board. */
+    public final int words;
+
+    private final int[] shifts;       // shift amount for each of the four line orientations
+    private final long[][] leftMasks;  // mask to apply after shifting left (towards higher squares)
+    private final long[][] rightMasks; // mask to apply after shifting right (towards lower squares)
+    private final int[][] rays;        // rays[sq * DIRECTIONS + d] = squares from sq in direction d
+
+    private BitboardN(int size) {
+        this.size = size;
+        this.squares = size * size;
+        this.words = (squares + 63) / 64;
+
+        long[] all = new long[words];
+        long[] notFirstRow = new long[words];
+        long[] notLastRow = new long[words];
+        for (int sq = 0; sq < squares; sq++) {
+            set(all, sq);
+            if (sq % size != 0)
+                set(notFirstRow, sq);
+            if (sq % size != size - 1)
+                set(notLastRow, sq);
+        }
+        shifts = new int[] {1, size, size + 1, size - 1};
+        leftMasks = new long[][] {notFirstRow, all, notFirstRow, notLastRow};
+        rightMasks = new long[][] {notLastRow, all, notLastRow, notFirstRow};
+
+        rays = new int[squares * DIRECTIONS][];
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                for (int d = 0; d < DIRECTIONS; d++) {
+                    int length = 0;
+                    int c = col + DELTA_COL[d];
+                    int r = row + DELTA_ROW[d];
+                    while (c >= 0 && c < size && r >= 0 && r < size) {
+                        length++;
+                        c += DELTA_COL[d];
+                        r += DELTA_ROW[d];
+                    }
+                    int[] ray = new int[length];
+                    for (int i = 0; i < length; i++)
+                        ray[i] = square(col + DELTA_COL[d] * (i + 1), row + DELTA_ROW[d] * (i + 1));
+                    rays[square(col, row) * DIRECTIONS + d] = ray;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the (shared) instance for boards with the given number of columns and rows.
+     */
+    public static BitboardN forSize(int size) {
+        return INSTANCES.computeIfAbsent(size, BitboardN::new);
+    }
+
+    /**
+     * Returns the square index for the given column and row.
+     */
+    public int square(int col, int row) {
+        return col * size + row;
+    }
+
+    /**
+     * Returns the number of longs of scratch space needed by {@link #legalMoves}.
+     */
+    public int scratchLength() {
+        return 3 * words;
+    }
+
+    /**
+     * Writes the mask of squares where the player owning {@code own} can put a token into
+     * {@code moves}.
+     *
+     * @param scratch array of at least {@link #scratchLength()} longs, overwritten.
+     */
+    public void legalMoves(long[] own, long[] opp, long[] moves, long[] scratch) {
+        int w = words;
+        int empty = 0;
+        int t = w;
+        int next = 2 * w;
+        for (int i = 0; i < w; i++) {
+            moves[i] = 0;
+            scratch[empty + i] = ~(own[i] | opp[i]);
+        }
+        for (int d = 0; d < 4; d++) {
+            for (int side = 0; side < 2; side++) {
+                boolean left = side == 0;
+                int s = shifts[d];
+                long[] mask = left ? leftMasks[d] : rightMasks[d];
+
+                // t = shift(own) & opp, then extend the run of opponent discs until it stops growing
+                shift(own, scratch, t, s, left);
+                long any = 0;
+                for (int i = 0; i < w; i++) {
+                    scratch[t + i] &= mask[i] & opp[i];
+                    any |= scratch[t + i];
+                }
+                for (int step = 0; any != 0 && step < size - 3; step++) {
+                    shift(scratch, t, scratch, next, s, left);
+                    long grown = 0;
+                    for (int i = 0; i < w; i++) {
+                        long add = scratch[next + i] & mask[i] & opp[i] & ~scratch[t + i];
+                        scratch[t + i] |= add;
+                        grown |= add;
+                    }
+                    any = grown;
+                }
+                shift(scratch, t, scratch, next, s, left);
+                for (int i = 0; i < w; i++)
+                    moves[i] |= scratch[next + i] & mask[i] & scratch[empty + i];
+            }
+        }
+    }
+
+    /**
+     * Writes the squares of the opponent discs that are turned if the player owning
+     * {@code own} puts a token on square {@code sq} into {@code out}, starting at index
+     * {@code offset}, and returns how many were written. Returns 0 if the move does not
+     * capture anything.
+     */
+    public int flips(long[] own, long[] opp, int sq, int[] out, int offset) {
+        int count = 0;
+        int base = sq * DIRECTIONS;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            int[] ray = rays[base + d];
+            int i = 0;
+            while (i < ray.length && get(opp, ray[i]))
+                i++;
+            if (i > 0 && i < ray.length && get(own, ray[i])) {
+                for (int j = 0; j < i; j++)
+                    out[offset + count++] = ray[j];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the squares reached from {@code sq} when stepping in direction {@code d}
+     * (0 to {@link #DIRECTIONS} - 1), nearest first. The array must not be modified.
+     */
+    public int[] ray(int sq, int d) {
+        return rays[sq * DIRECTIONS + d];
+    }
+
+    /**
+     * Returns the largest number of discs a single move can turn on this board.
+     */
+    public int maxFlips() {
+        return DIRECTIONS * (size - 2);
+    }
+
+    public static boolean get(long[] bits, int sq) {
+        return (bits[sq >>> 6] & (1L << sq)) != 0;
+    }
+
+    public static void set(long[] bits, int sq) {
+        bits[sq >>> 6] |= 1L << sq;
+    }
+
+    public static void clear(long[] bits, int sq) {
+        bits[sq >>> 6] &= ~(1L << sq);
+    }
+
+    public static int count(long[] bits) {
+        int n = 0;
+        for (long b : bits)
+            n += Long.bitCount(b);
+        return n;
+    }
+
+    private void shift(long[] src, long[] dst, int dstOff, int s, boolean left) {
+        shift(src, 0, dst, dstOff, s, left);
+    }
+
+    /**
+     * Shifts the bitset at src[srcOff..] by s bits towards higher (left) or lower squares
+     * and writes it to dst[dstOff..]. The two ranges must not overlap.
+     */
+    private void shift(long[] src, int srcOff, long[] dst, int dstOff, int s, boolean left) {
+        int w = words;
+        int ws = s >>> 6;
+        int bs = s & 63;
+        if (left) {
+            for (int i = w - 1; i >= 0; i--) {
+                int j = i - ws;
+                long v = j >= 0 ? src[srcOff + j] << bs : 0;
+                if (bs != 0 && j - 1 >= 0)
+                    v |= src[srcOff + j - 1] >>> (64 - bs);
+                dst[dstOff + i] = v;
+            }
+        } else {
+            for (int i = 0; i < w; i++) {
+                int j = i + ws;
+                long v = j < w ? src[srcOff + j] >>> bs : 0;
+                if (bs != 0 && j + 1 < w)
+                    v |= src[srcOff + j + 1] << (64 - bs);
+                dst[dstOff + i] = v;
+            }
+        }
+    }
+}
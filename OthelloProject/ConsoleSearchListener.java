@@ -0,0 +1,48 @@
+import java.util.Locale;
+
+/**
+ * The SearchListener OthelloAIDonathello uses unless told otherwise. Prints the
+ * decided move and, when the counters of SearchStats are enabled, a line per
+ * iteration to System.out.
+ */
+public class ConsoleSearchListener implements SearchListener {
+
+    @Override
+    public void iterationFinished(SearchStats it) {
+        if (SearchStats.ENDGAME.equals(it.getMethod()) && it.isAborted()) {
+            System.out.println("Endgame solver gave up after " + it.getNanos() / 1_000_000 + "ms and "
+                    + it.getNodes() + " nodes");
+            return;
+        }
+        if (!SearchStats.ENABLED) {
+            return;
+        }
+        System.out.printf(Locale.ROOT,
+                "%s depth %d%s: %d nodes, %d leaves, cutoffs %.1f%% (first move %.1f%%), "
+                        + "tt hits %.1f%% (cutoffs %.1f%%), ebf %.2f, %.1fms, pv %s%n",
+                it.getMethod(), it.getDepth(), it.isAborted() ? " (aborted)" : "", it.getNodes(), it.getLeaves(),
+                100 * it.getCutoffRate(), 100 * it.getFirstMoveCutoffRate(), 100 * it.getTranspositionHitRate(),
+                100 * it.getTranspositionCutoffRate(), it.getBranchingFactor(), it.getNanos() / 1e6,
+                it.getPrincipalVariation());
+    }
+
+    @Override
+    public void moveDecided(Position move, SearchStats total) {
+        long millis = total.getNanos() / 1_000_000;
+        if (SearchStats.PONDER.equals(total.getMethod())) {
+            System.out.println("Ponder hit");
+        }
+        switch (total.getMethod()) {
+            case SearchStats.BOOK:
+                System.out.println("Book move " + move + " took " + millis + "ms");
+                break;
+            case SearchStats.ENDGAME:
+                System.out.println("Solved " + total.getDepth() + " empties: final disc difference "
+                        + (int) total.getValue() + " in " + millis + "ms, " + total.getNodes() + " nodes");
+                break;
+            default:
+                System.out.println("Utility for best move is " + total.getValue() + " at depth " + total.getDepth());
+                System.out.println("Decision took " + millis + "ms");
+        }
+    }
+}
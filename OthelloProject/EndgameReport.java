@@ -0,0 +1,37 @@
+import java.util.List;
+
+/**
+ * Measures the time and nodes EndgameSolver needs to solve positions with a
+ * given number of empty squares, to help choose the number of empty squares at
+ * which OthelloAIDonathello switches from its heuristic search to the solver
+ * (see OthelloAIDonathello.setEndgameEmpties).
+ *
+ * For every number of empty squares from 4 up to the maximum, a fixed corpus of
+ * positions is solved by a fresh solver, and the mean time and nodes per
+ * position are reported.
+ *
+ * Usage: java EndgameReport [max empties] [positions] [size]
+ * Defaults: 16 empty squares, 10 positions, 8x8.
+ */
+public class EndgameReport {
+
+    public static void main(String[] args) {
+        int maxEmpties = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        System.out.println("Solving " + count + " positions of size " + size + " per number of empty squares");
+        System.out.println("empties      ms/solve     nodes/solve      nodes/s");
+        for (int empties = 4; empties <= maxEmpties; empties++) {
+            List<GameState> positions = PositionCorpus.endgame(size, count, empties, 2018);
+            EndgameSolver solver = new EndgameSolver();
+            long start = System.nanoTime();
+            for (GameState s : positions) {
+                solver.solve(s);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%7d %13.2f %15.0f %12.0f%n", empties, seconds * 1000 / count,
+                    (double) solver.getNodes() / count, solver.getNodes() / seconds);
+        }
+    }
+}
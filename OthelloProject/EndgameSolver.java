@@ -0,0 +1,290 @@
+/**
+ * Exact solver for positions close to the end of the game.
+ *
+ * The solver searches to the end of the game with negamax and alpha beta
+ * pruning, and returns the exact final disc difference (tokens of the player in
+ * turn minus tokens of the opponent) with best play from both sides. A player
+ * without legal moves passes, and the game ends when neither player can move.
+ *
+ * Moves are ordered fastest-first (moves that leave the opponent the fewest
+ * replies are tried first) while many squares are empty, and by parity (moves
+ * into a quadrant with an odd number of empty squares first) near the end. The
+ * last three empty squares are handled by dedicated routines that try the
+ * empty squares directly instead of generating and ordering moves.
+ */
+public class EndgameSolver {
+
+    /** Below this number of empty squares moves are ordered by parity only. */
+    public static final int FASTEST_FIRST_EMPTIES = 7;
+
+    private int[][] moveBuffers = new int[0][];
+    private int[][] keyBuffers = new int[0][];
+    private int[] empties = new int[0];
+    private int[] mobilityBuffer = new int[0];
+    private int size;
+
+    private long nodes;
+    private long deadline;
+    private boolean canAbort;
+    private boolean aborted;
+    private int bestSquare;
+
+    /**
+     * Returns the number of nodes visited since the solver was created.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the best move of the last call to solve, or -1 if the player in
+     * turn had to pass.
+     */
+    public int getBestSquare() {
+        return bestSquare;
+    }
+
+    /**
+     * Returns true if the last call to solve was stopped by the deadline or by
+     * interrupting its thread, in which case its result is meaningless.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Sets the value of System.nanoTime() at which solve gives up.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+        this.canAbort = true;
+    }
+
+    /**
+     * Removes the deadline, so solve always runs to completion.
+     */
+    public void clearDeadline() {
+        this.canAbort = false;
+    }
+
+    /**
+     * Returns the final disc difference for the player in turn at s with best play.
+     * s is unchanged when the method returns.
+     */
+    public int solve(GameState s) {
+        int squares = s.getSquareCount();
+        return solve(s, -squares - 1, squares + 1);
+    }
+
+    /**
+     * Like {@link #solve(GameState)}, but only looks for values between alpha and
+     * beta. A result at or below alpha is an upper bound of the true value, and a
+     * result at or above beta is a lower bound.
+     */
+    public int solve(GameState s, int alpha, int beta) {
+        int squares = s.getSquareCount();
+        if (empties.length < squares) {
+            // every ply is a move or a pass, and there are never two passes in a row
+            moveBuffers = new int[2 * squares + 2][squares];
+            keyBuffers = new int[2 * squares + 2][squares];
+            empties = new int[squares];
+            mobilityBuffer = new int[squares];
+        }
+        size = s.getBoard().length;
+        aborted = false;
+        bestSquare = -1;
+        int n = s.emptySquares(empties);
+        return negamax(s, alpha, beta, 0, n, false);
+    }
+
+    private int negamax(GameState s, int alpha, int beta, int ply, int emptyCount, boolean passed) {
+        if ((++nodes & 1023) == 0 && (canAbort && System.nanoTime() - deadline >= 0
+                || Thread.currentThread().isInterrupted())) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (ply > 0 && emptyCount <= 3) {
+            switch (emptyCount) {
+                case 0: return discDifference(s);
+                case 1: return lastOne(s);
+                case 2: return lastTwo(s, alpha, beta);
+                default: return lastThree(s, alpha, beta);
+            }
+        }
+
+        int[] moves = moveBuffers[ply];
+        int n = s.legalMoves(moves);
+        if (n == 0) {
+            if (passed) {
+                return discDifference(s);
+            }
+            s.makePass();
+            int value = -negamax(s, -beta, -alpha, ply + 1, emptyCount, true);
+            s.unmakeMove();
+            return value;
+        }
+        order(s, moves, n, keyBuffers[ply], emptyCount);
+
+        int best = Integer.MIN_VALUE;
+        int bestMove = moves[0];
+        for (int i = 0; i < n; i++) {
+            s.makeMove(moves[i]);
+            int value = -negamax(s, -beta, -alpha, ply + 1, emptyCount - 1, false);
+            s.unmakeMove();
+            if (aborted) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = moves[i];
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (ply == 0) {
+            bestSquare = bestMove;
+        }
+        return best;
+    }
+
+    /**
+     * Orders the moves fastest-first, or by parity when few squares are empty.
+     */
+    private void order(GameState s, int[] moves, int n, int[] keys, int emptyCount) {
+        int parity = regionParity(s);
+        boolean fastestFirst = emptyCount > FASTEST_FIRST_EMPTIES;
+        for (int i = 0; i < n; i++) {
+            int sq = moves[i];
+            // lower keys first: opponent mobility, then even regions after odd ones
+            int key = (parity >>> region(sq)) & 1 ^ 1;
+            if (fastestFirst) {
+                s.makeMove(sq);
+                key += 2 * s.legalMoves(mobilityBuffer);
+                s.unmakeMove();
+            }
+            int j = i;
+            while (j > 0 && keys[j - 1] > key) {
+                keys[j] = keys[j - 1];
+                moves[j] = moves[j - 1];
+                j--;
+            }
+            keys[j] = key;
+            moves[j] = sq;
+        }
+    }
+
+    /**
+     * Returns a mask with bit r set if quadrant r has an odd number of empty squares.
+     */
+    private int regionParity(GameState s) {
+        int n = s.emptySquares(empties);
+        int parity = 0;
+        for (int i = 0; i < n; i++) {
+            parity ^= 1 << region(empties[i]);
+        }
+        return parity;
+    }
+
+    private int region(int sq) {
+        int half = size / 2;
+        return (sq / size >= half ? 2 : 0) + (sq % size >= half ? 1 : 0);
+    }
+
+    private static int discDifference(GameState s) {
+        int player = s.getPlayerInTurn();
+        return s.countTokens(player) - s.countTokens(player == 1 ? 2 : 1);
+    }
+
+    /**
+     * One empty square left: the player in turn takes it if possible, otherwise
+     * the opponent does, otherwise the game ends with it empty.
+     */
+    private int lastOne(GameState s) {
+        nodes++;
+        s.emptySquares(empties);
+        int sq = empties[0];
+        if (s.makeMove(sq)) {
+            int value = -discDifference(s);
+            s.unmakeMove();
+            return value;
+        }
+        s.makePass();
+        int value;
+        if (s.makeMove(sq)) {
+            value = discDifference(s);
+            s.unmakeMove();
+        } else {
+            value = -discDifference(s);
+        }
+        s.unmakeMove();
+        return value;
+    }
+
+    private int lastTwo(GameState s, int alpha, int beta) {
+        s.emptySquares(empties);
+        return lastN(s, alpha, beta, empties[0], empties[1], -1, 2, false);
+    }
+
+    private int lastThree(GameState s, int alpha, int beta) {
+        s.emptySquares(empties);
+        int a = empties[0];
+        int b = empties[1];
+        int c = empties[2];
+        // try the square that is alone in its quadrant first
+        if (region(a) == region(b)) {
+            int t = a; a = c; c = t;
+        } else if (region(a) == region(c)) {
+            int t = a; a = b; b = t;
+        }
+        return lastN(s, alpha, beta, a, b, c, 3, false);
+    }
+
+    /**
+     * Solves a position with two or three empty squares (c is -1 for two), trying
+     * the squares in the given order.
+     */
+    private int lastN(GameState s, int alpha, int beta, int a, int b, int c, int count, boolean passed) {
+        nodes++;
+        int best = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int sq = i == 0 ? a : i == 1 ? b : c;
+            if (!s.makeMove(sq)) {
+                continue;
+            }
+            int value;
+            if (count == 2) {
+                value = -lastOne(s);
+            } else {
+                int x = i == 0 ? b : a;
+                int y = i == 2 ? b : c;
+                value = -lastN(s, -beta, -alpha, x, y, -1, 2, false);
+            }
+            s.unmakeMove();
+            if (value > best) {
+                best = value;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        return best;
+                    }
+                }
+            }
+        }
+        if (best != Integer.MIN_VALUE) {
+            return best;
+        }
+        if (passed) {
+            return discDifference(s);
+        }
+        s.makePass();
+        int value = -lastN(s, -beta, -alpha, a, b, c, count, true);
+        s.unmakeMove();
+        return value;
+    }
+}
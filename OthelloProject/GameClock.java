@@ -0,0 +1,105 @@
+import java.util.Locale;
+
+/**
+ * Chess clocks for the two players of a game: each player has a total time for
+ * all of its moves, and gets a fixed increment after every move it makes.
+ *
+ * At most one clock runs at a time. The game loop starts the clock of a player
+ * when it asks the player for a move and stops it when the move is made; a
+ * player whose time ran out before that has lost on time. The methods are
+ * synchronized, so the clocks can be read from other threads, e.g. to show them.
+ */
+public class GameClock {
+
+    private final long incrementNanos;
+    // Time left per player (1 and 2), not counting the clock that is running; negative once flagged
+    private final long[] remainingNanos = new long[3];
+    private int running; // Player whose clock runs, or 0
+    private long startedAt;
+
+    /**
+     * Creates clocks with the given time for each player and the given
+     * increment per move, both in milliseconds.
+     */
+    public GameClock(long timeMillis, long incrementMillis) {
+        incrementNanos = incrementMillis * 1_000_000;
+        remainingNanos[1] = timeMillis * 1_000_000;
+        remainingNanos[2] = timeMillis * 1_000_000;
+    }
+
+    /**
+     * Starts the clock of the given player, stopping the other one (without an
+     * increment) if it was running. Does nothing if it already runs.
+     */
+    public synchronized void start(int player) {
+        if (running == player) {
+            return;
+        }
+        if (running != 0) {
+            remainingNanos[running] -= System.nanoTime() - startedAt;
+        }
+        running = player;
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * Stops the running clock, because its player made a move, and adds the
+     * increment to it.
+     *
+     * @return false if the player had run out of time before the move, in which
+     *         case no increment is added.
+     */
+    public synchronized boolean stop() {
+        if (running == 0) {
+            return true;
+        }
+        int player = running;
+        remainingNanos[player] -= System.nanoTime() - startedAt;
+        running = 0;
+        if (remainingNanos[player] < 0) {
+            return false;
+        }
+        remainingNanos[player] += incrementNanos;
+        return true;
+    }
+
+    /**
+     * Returns whether the given player has run out of time, counting its clock
+     * if it is running.
+     */
+    public synchronized boolean isOutOfTime(int player) {
+        return remaining(player) < 0;
+    }
+
+    /**
+     * Returns the time left for the given player in milliseconds, counting its
+     * clock if it is running, and 0 once the player has run out.
+     */
+    public synchronized long getRemainingMillis(int player) {
+        return Math.max(0, remaining(player) / 1_000_000);
+    }
+
+    public long getIncrementMillis() {
+        return incrementNanos / 1_000_000;
+    }
+
+    /**
+     * Returns the clock to give the given player when it is asked for a move.
+     */
+    public synchronized MoveClock moveClock(int player) {
+        return new MoveClock(getRemainingMillis(player), getIncrementMillis(), getRemainingMillis(3 - player));
+    }
+
+    private long remaining(int player) {
+        long remaining = remainingNanos[player];
+        return running == player ? remaining - (System.nanoTime() - startedAt) : remaining;
+    }
+
+    /**
+     * Formats milliseconds as minutes, seconds and tenths, e.g. 1:05.3.
+     */
+    public static String format(long millis) {
+        long tenths = millis / 100;
+        return String.format(Locale.ROOT, "%d:%02d.%d", tenths / 600, tenths / 10 % 60, tenths % 10);
+    }
+}
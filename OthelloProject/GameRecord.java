@@ -0,0 +1,399 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * The moves and result of one game, and a compact file format to keep many of
+ * them in, written by Tournament and OthelloGUI so games can be replayed.
+ *
+ * A file has an 8 byte header (magic number and version) followed by the games,
+ * each a 10 byte header (board size, starting player, winner, how the game ended,
+ * number of moves as an unsigned short, and the discs of black and white as
+ * shorts) and then one byte per move: the square of the move (see
+ * GameState.square), or for a pass the square at the top left of the centre,
+ * which is never empty. Squares fit in a byte, so boards are at most
+ * {@link #MAX_SIZE} squares wide. A game of 60 moves takes 70 bytes.
+ *
+ * Files are only ever appended to (see Writer), and read through a memory map
+ * one game at a time (see Reader), so reading millions of games allocates nothing
+ * per game.
+ *
+ * Usage: java GameRecord file... prints a summary of the games in the files.
+ */
+public final class GameRecord {
+
+    /** Largest board whose squares fit in a byte. */
+    public static final int MAX_SIZE = 16;
+
+    /** The game was played to the end. */
+    public static final int FINISHED = 0;
+    /** The loser ran out of time. */
+    public static final int TIME = 1;
+    /** The loser played an illegal move. */
+    public static final int ILLEGAL_MOVE = 2;
+    /**
+     * An AI failed to decide a move, e.g. it threw. Tournament ends the game there
+     * and that player loses; OthelloGUI plays its first legal move instead and
+     * the winner is decided by the final discs.
+     */
+    public static final int ERROR = 3;
+    /** The game was stopped before it ended; the winner is 0. */
+    public static final int UNFINISHED = 4;
+
+    private static final String[] END_NAMES = {"finished", "time", "illegal move", "error", "unfinished"};
+
+    private static final int MAGIC = 0x4F47_5231; // "OGR1"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int GAME_HEADER_BYTES = 10;
+
+    private final int size;
+    private final int startingPlayer;
+    private int[] moves;
+    private int moveCount;
+    private int winner;
+    private int end;
+    private int blackDiscs;
+    private int whiteDiscs;
+
+    /**
+     * Creates an empty record of a game on a board of the given size, started by
+     * the given player.
+     *
+     * @throws IllegalArgumentException if the board is larger than MAX_SIZE.
+     */
+    public GameRecord(int size, int startingPlayer) {
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Games on boards larger than " + MAX_SIZE + "x" + MAX_SIZE
+                    + " cannot be recorded");
+        }
+        this.size = size;
+        this.startingPlayer = startingPlayer;
+        this.moves = new int[size * size];
+    }
+
+    /**
+     * Returns the byte that stands for a pass on boards of the given size: the
+     * square at the top left of the four centre squares, where a disc is put
+     * before the first move.
+     */
+    public static int passToken(int size) {
+        int half = size / 2 - 1;
+        return half * size + half;
+    }
+
+    /**
+     * Returns a name for the given way a game ended, such as "time".
+     */
+    public static String endName(int end) {
+        return end >= 0 && end < END_NAMES.length ? END_NAMES[end] : "unknown (" + end + ")";
+    }
+
+    /**
+     * Adds a move, the square of a disc put on the board or GameState.PASS.
+     */
+    public void addMove(int sq) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, 2 * moveCount);
+        }
+        moves[moveCount++] = sq;
+    }
+
+    /**
+     * Records the result: the discs of the final state, the winner (0 for a tie)
+     * and how the game ended.
+     */
+    public void finish(GameState state, int winner, int end) {
+        this.blackDiscs = state.countTokens(1);
+        this.whiteDiscs = state.countTokens(2);
+        this.winner = winner;
+        this.end = end;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getStartingPlayer() {
+        return startingPlayer;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the square of the given move, or GameState.PASS.
+     */
+    public int getMove(int i) {
+        return moves[i];
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int getBlackDiscs() {
+        return blackDiscs;
+    }
+
+    public int getWhiteDiscs() {
+        return whiteDiscs;
+    }
+
+    /**
+     * Returns the state after playing the moves from the start position.
+     *
+     * @throws IllegalStateException if a move is illegal.
+     */
+    public GameState replay() {
+        GameState state = new GameState(size, startingPlayer);
+        for (int i = 0; i < moveCount; i++) {
+            if (moves[i] == GameState.PASS) {
+                state.makePass();
+            } else if (!state.makeMove(moves[i])) {
+                throw new IllegalStateException("Move " + (i + 1) + " to " + state.position(moves[i])
+                        + " is illegal");
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Appends games to a file, creating it if it does not exist. Safe to use from
+     * several threads. Games are buffered; call flush to make sure a game is in the
+     * file even if the program ends without closing the writer.
+     */
+    public static final class Writer implements Closeable, Flushable {
+
+        private final DataOutputStream out;
+
+        /**
+         * Opens the given file for appending.
+         *
+         * @throws IOException if the file cannot be written or holds something else than games.
+         */
+        public Writer(Path file) throws IOException {
+            boolean empty = !Files.exists(file) || Files.size(file) == 0;
+            if (!empty) {
+                checkHeader(file);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 12));
+            if (empty) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.flush();
+            }
+        }
+
+        /**
+         * Writes the given game to the end of the file.
+         */
+        public synchronized void write(GameRecord game) throws IOException {
+            int token = passToken(game.size);
+            out.writeByte(game.size);
+            out.writeByte(game.startingPlayer);
+            out.writeByte(game.winner);
+            out.writeByte(game.end);
+            out.writeShort(game.moveCount);
+            out.writeShort(game.blackDiscs);
+            out.writeShort(game.whiteDiscs);
+            for (int i = 0; i < game.moveCount; i++) {
+                out.writeByte(game.moves[i] == GameState.PASS ? token : game.moves[i]);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static void checkHeader(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a game record file");
+            }
+        } catch (EOFException e) {
+            throw new IOException(file + " is not a game record file");
+        }
+    }
+
+    /**
+     * Reads the games of a file one at a time through a memory map: after next
+     * has returned true, the getters describe the game read. Files larger than
+     * the largest map are mapped a gigabyte at a time.
+     */
+    public static final class Reader implements Closeable {
+
+        private static final long MAP_BYTES = 1L << 30;
+
+        private final FileChannel channel;
+        private final long length;
+        private MappedByteBuffer buffer;
+        private long mapStart;
+        private long position = FILE_HEADER_BYTES;
+        // Offset in buffer of the header of the game read, and its pass token
+        private int game = -1;
+        private int passToken;
+
+        /**
+         * Opens the given file.
+         *
+         * @throws IOException if the file cannot be read or is not a game record file.
+         */
+        public Reader(Path file) throws IOException {
+            checkHeader(file);
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            length = channel.size();
+            map(position);
+        }
+
+        private void map(long start) throws IOException {
+            mapStart = start;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_BYTES, length - start));
+        }
+
+        /**
+         * Reads the next game, or returns false at the end of the file.
+         *
+         * @throws IOException if the file ends inside a game.
+         */
+        public boolean next() throws IOException {
+            if (position >= length) {
+                return false;
+            }
+            if (position + GAME_HEADER_BYTES > length) {
+                throw new IOException("Game record file ends inside a game at byte " + position);
+            }
+            if (position + GAME_HEADER_BYTES > mapStart + buffer.limit()) {
+                map(position);
+            }
+            int moves = buffer.getShort((int) (position - mapStart) + 4) & 0xFFFF;
+            long next = position + GAME_HEADER_BYTES + moves;
+            if (next > length) {
+                throw new IOException("Game record file ends inside a game at byte " + position);
+            }
+            if (next > mapStart + buffer.limit()) {
+                map(position);
+            }
+            game = (int) (position - mapStart);
+            passToken = passToken(getSize());
+            position = next;
+            return true;
+        }
+
+        public int getSize() {
+            return buffer.get(game) & 0xFF;
+        }
+
+        public int getStartingPlayer() {
+            return buffer.get(game + 1);
+        }
+
+        public int getWinner() {
+            return buffer.get(game + 2);
+        }
+
+        public int getEnd() {
+            return buffer.get(game + 3);
+        }
+
+        public int getMoveCount() {
+            return buffer.getShort(game + 4) & 0xFFFF;
+        }
+
+        public int getBlackDiscs() {
+            return buffer.getShort(game + 6);
+        }
+
+        public int getWhiteDiscs() {
+            return buffer.getShort(game + 8);
+        }
+
+        /**
+         * Returns the square of the given move of the game read, or GameState.PASS.
+         */
+        public int getMove(int i) {
+            int sq = buffer.get(game + GAME_HEADER_BYTES + i) & 0xFF;
+            return sq == passToken ? GameState.PASS : sq;
+        }
+
+        /**
+         * Returns a record of the game read, which can be kept.
+         */
+        public GameRecord toRecord() {
+            GameRecord record = new GameRecord(getSize(), getStartingPlayer());
+            for (int i = 0; i < getMoveCount(); i++) {
+                record.addMove(getMove(i));
+            }
+            record.winner = getWinner();
+            record.end = getEnd();
+            record.blackDiscs = getBlackDiscs();
+            record.whiteDiscs = getWhiteDiscs();
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java GameRecord file...");
+            System.exit(1);
+        }
+        for (String name : args) {
+            long start = System.nanoTime();
+            long games = 0;
+            long moves = 0;
+            // Per board size: games, black wins, white wins, ties; and games per way of ending
+            TreeMap<Integer, long[]> results = new TreeMap<>();
+            long[] ends = new long[END_NAMES.length + 1];
+            try (Reader reader = new Reader(Paths.get(name))) {
+                while (reader.next()) {
+                    games++;
+                    moves += reader.getMoveCount();
+                    long[] r = results.computeIfAbsent(reader.getSize(), s -> new long[4]);
+                    r[0]++;
+                    r[reader.getWinner() == 0 ? 3 : reader.getWinner()]++;
+                    ends[Math.min(END_NAMES.length, Math.max(0, reader.getEnd()))]++;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "%s: %d games, %d moves, read in %.2fs%n", name, games, moves, seconds);
+            results.forEach((size, r) -> System.out.printf(Locale.ROOT,
+                    "  %dx%d: %d games, black won %d, white won %d, %d ties%n", size, size, r[0], r[1], r[2], r[3]));
+            for (int end = 0; end < ends.length; end++) {
+                if (ends[end] > 0) {
+                    System.out.println("  " + endName(end) + ": " + ends[end]);
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,16 @@
 import java.util.ArrayList;
-
+import java.util.Arrays;
+	
 /**
  * Class to represent the state of a game of Othello.  The state is defined by a 2-dimensional
  * board and whose turn it is. 
+ *
+ * The discs are stored as one bitset per player (see {@link BitboardN}), and the 2-dimensional
+ * array returned by {@link #getBoard()} is only built when asked for. On the standard 8x8 board
+ * each bitset is a single long and the 64-bit routines in {@link Bitboard} are used.
+ *
+ * A state is not safe to use from several threads, not even only to read it: methods such as
+ * isFinished and legalMoves fill in caches. Give every thread its own copy.
  * @author Mai Ajspur
  * @version 9.2.2018
  */
@@ -10,6 +18,31 @@ public class GameState {
 	private int[][] board; 		// Possible values: 0 (empty), 1 (black), 2 (white)
 	private int currentPlayer; 	// The player who is next to put a token on the board. Value is 1 or 2.
 	private int size;  			// The number of columns = the number of rows on the board
+	private BitboardN geometry;	// Shift masks and rays for boards of this size
+	private long[] black;		// Bitset of the tokens of player 1
+	private long[] white;		// Bitset of the tokens of player 2
+	private Zobrist zobrist;	// Keys for boards of this size
+	private long hash;			// Zobrist hash of the board and the player in turn
+	private double[] squareWeights;	// Weight of each square, or null if weighted tokens are not kept
+	private double weighted1;	// Sum of the weights of the squares with tokens of player 1
+	private double weighted2;	// Sum of the weights of the squares with tokens of player 2
+	private PatternSet patterns;	// Patterns whose indices are kept, or null
+	private int[] patternIndices;	// Index of every instance of the patterns, see PatternSet
+	private boolean boardStale;	// Whether board has to be rebuilt from black/white before use
+	private long[][] moveMasks;	// Legal moves of player 1 and 2 (at index 1 and 2), allocated on first use
+	private int movesKnown;		// Bit p is set if moveMasks[p] is up to date with black/white
+	private long[] scratch;		// Scratch space for move generation, allocated on first use
+	private int[] moveList;		// Squares of the legal moves, used by legalMoves()
+	private int[] history;		// For each move made: the square (or PASS) followed by the squares it turned
+	private int[] plyStart;		// Index in history where each move made starts
+	private int[] plyPlayer;	// The player in turn before each move made
+	private long[] plyHash;		// The hash before each move made
+	private double[] plyWeighted;	// weighted1 and weighted2 before each move made
+	private int plies;			// Number of moves made that can be taken back
+	private int historyTop;		// Number of used entries in history
+
+	/** Square value recorded in the history for a pass. */
+	public static final int PASS = -1;
 	
 	//************ Constructors ****************//
 	/**
@@ -29,6 +62,7 @@ public class GameState {
         board[half+1][half+1] = 1;
         board[half][half+1] = 2;
         board[half+1][half] = 2;   
+        pack();
 	}
 	
 	/**
@@ -47,6 +81,65 @@ public class GameState {
 			}
 		}
 		this.currentPlayer = playerToTakeTurn;
+		pack();
+	}
+
+	/**
+	 * Constructs a new game state with the same board and player in turn as the given one. The moves
+	 * made on the given state are not copied, so they cannot be taken back on the new state.
+	 */
+	public GameState(GameState other){
+		this.size = other.size;
+		this.boardStale = true;
+		this.currentPlayer = other.currentPlayer;
+		this.geometry = other.geometry;
+		this.black = other.black.clone();
+		this.white = other.white.clone();
+		this.zobrist = other.zobrist;
+		this.hash = other.hash;
+		this.squareWeights = other.squareWeights;
+		this.weighted1 = other.weighted1;
+		this.weighted2 = other.weighted2;
+		this.patterns = other.patterns;
+		if ( other.patternIndices != null )
+			this.patternIndices = other.patternIndices.clone();
+	}
+	
+	/**
+	 * Constructs a new game state from bitsets of the tokens of each player, indexed as in
+	 * {@link #square(Position)}. The bitsets are copied.
+	 * @param size Number of columns (and number of rows) in the board.
+	 * @param playerToTakeTurn The player who will be the first to take a turn. Should be 1 (black) 
+	 * or 2 (white)
+	 */
+	public GameState(int size, long[] black, long[] white, int playerToTakeTurn){
+		this.size = size;
+		this.boardStale = true;
+		this.currentPlayer = playerToTakeTurn;
+		this.geometry = BitboardN.forSize(size);
+		this.black = Arrays.copyOf(black, geometry.words);
+		this.white = Arrays.copyOf(white, geometry.words);
+		this.zobrist = Zobrist.forSize(size);
+		this.hash = zobrist.hash(this.black, this.white, currentPlayer);
+	}
+
+	/**
+	 * Fills the bitsets from the 2-dimensional board.
+	 */
+	private void pack(){
+		geometry = BitboardN.forSize(size);
+		black = new long[geometry.words];
+		white = new long[geometry.words];
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] == 1 )
+					BitboardN.set(black, geometry.square(i, j));
+				else if ( board[i][j] == 2 )
+					BitboardN.set(white, geometry.square(i, j));
+			}
+		}
+		zobrist = Zobrist.forSize(size);
+		hash = zobrist.hash(black, white, currentPlayer);
 	}
 	
 	//************ Getter methods *******************//
@@ -54,9 +147,30 @@ public class GameState {
 	 * Returns the array representing the board of this game state
 	 */
 	public int[][] getBoard(){
+		if ( boardStale ){
+			if ( board == null )
+				board = new int[size][size];
+			for (int i = 0; i < size; i++){
+				for (int j = 0; j < size; j++){
+					int sq = geometry.square(i, j);
+					board[i][j] = BitboardN.get(black, sq) ? 1 : BitboardN.get(white, sq) ? 2 : 0;
+				}
+			}
+			boardStale = false;
+		}
 		return board;
 	}
-
+	
+	/**
+	 * Copies the bitset of the tokens of the given player (1 or 2), indexed as in
+	 * {@link #square(Position)}, into the given array.
+	 * @param discs Array with room for one bit per square.
+	 */
+	public void copyDiscs(int player, long[] discs){
+		long[] own = player == 1 ? black : white;
+		System.arraycopy(own, 0, discs, 0, own.length);
+	}
+	
 	/**
 	 * Returns the player whose turn it is, i.e. 1 (black) or 2 (white).
 	 */
@@ -64,30 +178,111 @@ public class GameState {
 		return currentPlayer;
 	}
 
+	/**
+	 * Returns the Zobrist hash of the board and the player in turn (see {@link Zobrist}). The hash is
+	 * updated incrementally as moves are made and taken back.
+	 */
+	public long getHash(){
+		return hash;
+	}
+
+	/**
+	 * Sets a weight for every square (indexed as in {@link #square(Position)}). From then on the sum
+	 * of the weights of each player's tokens is kept up to date as moves are made and taken back, so
+	 * {@link #getWeightedTokens(int)} does not have to look at the board. The array is not copied and
+	 * must not be changed afterwards.
+	 */
+	public void setSquareWeights(double[] weights){
+		squareWeights = weights;
+		weighted1 = 0;
+		weighted2 = 0;
+		for (int w = 0; w < black.length; w++){
+			for (long b = black[w]; b != 0; b &= b - 1)
+				weighted1 += weights[w * 64 + Long.numberOfTrailingZeros(b)];
+			for (long b = white[w]; b != 0; b &= b - 1)
+				weighted2 += weights[w * 64 + Long.numberOfTrailingZeros(b)];
+		}
+	}
+
+	/**
+	 * Returns the weights set by {@link #setSquareWeights(double[])}, or null if none are set.
+	 */
+	public double[] getSquareWeights(){
+		return squareWeights;
+	}
+
+	/**
+	 * Returns the sum of the square weights of the tokens of the given player (1 or 2), as set by
+	 * {@link #setSquareWeights(double[])}. Returns 0 if no weights have been set.
+	 */
+	public double getWeightedTokens(int player){
+		return player == 1 ? weighted1 : weighted2;
+	}
+
+	/**
+	 * Sets the patterns (for boards of this size) whose indices are kept. From then on the index of
+	 * every instance of the patterns is kept up to date as moves are made and taken back, so
+	 * {@link #getPatternIndices()} does not have to look at the board.
+	 */
+	public void setPatterns(PatternSet patterns){
+		this.patterns = patterns;
+		patternIndices = new int[patterns.instances()];
+		patterns.indices(black, white, patternIndices);
+	}
+
+	/**
+	 * Returns the patterns set by {@link #setPatterns(PatternSet)}, or null if none are set.
+	 */
+	public PatternSet getPatterns(){
+		return patterns;
+	}
+
+	/**
+	 * Returns the index of every instance of the patterns set by {@link #setPatterns(PatternSet)}, or
+	 * null if none are set. The array is updated by later moves and must not be changed.
+	 */
+	public int[] getPatternIndices(){
+		return patternIndices;
+	}
+	
 	//************* Methods ****************//
 	/**
 	 * Skips the turn of the current player (without) changing the board.
 	 */
 	public void changePlayer(){
 		currentPlayer = currentPlayer == 1 ? 2 : 1;
+		hash ^= zobrist.sideToMove;
 	}
 	
 	/**
 	 * Returns true if the game is finished (i.e. none of the players can make any legal moves)
-	 * and false otherwise.
+	 * and false otherwise. The board and the player in turn are not changed.
 	 */
 	public boolean isFinished(){
-		if ( !legalMoves().isEmpty() )
-			return false;
-		else{ //current player has no legal moves
-			changePlayer();
-			if ( legalMoves().isEmpty() ) //next player also has no legal moves
+		return !hasLegalMoves(1) && !hasLegalMoves(2);
+	}
+
+	/**
+	 * Returns true if the current player has no legal moves but the other player has, so the
+	 * current player has to pass.
+	 */
+	public boolean mustPass(){
+		return !hasLegalMoves(currentPlayer) && hasLegalMoves(currentPlayer == 1 ? 2 : 1);
+	}
+
+	/**
+	 * Returns the number of legal moves of the given player (1 or 2), whether or not it is that
+	 * player's turn.
+	 */
+	public int countLegalMoves(int player){
+		return BitboardN.count(moveMask(player));
+	}
+
+	private boolean hasLegalMoves(int player){
+		for (long m : moveMask(player))
+			if ( m != 0 )
 				return true;
-			else{
-				changePlayer();
-				return false;
-			}
-		}
+		return false;
 	}
 	
 	/**
@@ -95,19 +290,32 @@ public class GameState {
 	 * with the numbers in that order.
 	 */
 	public int[] countTokens(){
-    	int tokens1 = 0;
-    	int tokens2 = 0;
-    	for (int i = 0; i < size; i++){
-    		for (int j = 0; j < size; j++){
-    			if ( board[i][j] == 1 )
-    				tokens1++;
-    			else if ( board[i][j] == 2 )
-    				tokens2++;
-    		}
-    	}
-    	return new int[]{tokens1, tokens2};
+		return new int[]{BitboardN.count(black), BitboardN.count(white)};
 	}
 	
+	/**
+	 * Returns the number of tokens of the given player (1 or 2), without allocating.
+	 */
+	public int countTokens(int player){
+		return BitboardN.count(player == 1 ? black : white);
+	}
+
+	/**
+	 * Writes the index of every empty square into the given array and returns how many there are.
+	 * @param squares Array with room for at least {@link #getSquareCount()} entries.
+	 */
+	public int emptySquares(int[] squares){
+		int n = 0;
+		for (int w = 0; w < black.length; w++){
+			long empty = ~(black[w] | white[w]);
+			if ( w == black.length - 1 && geometry.squares % 64 != 0 )
+				empty &= (1L << (geometry.squares % 64)) - 1;
+			for (; empty != 0; empty &= empty - 1)
+				squares[n++] = w * 64 + Long.numberOfTrailingZeros(empty);
+		}
+		return n;
+	}
+
 	/**
 	 * If it is legal for the current player to put a token at the given place, then the token is inserted, the required 
 	 * tokens from the opponent is turned, and true is returned. If the move is not legal, false is returned. 
@@ -116,83 +324,255 @@ public class GameState {
     public boolean insertToken(Position place) { 
     	if ( place.col < 0 || place.row < 0 || place.col >= size || place.row >= size ) //not a position on the board
     		return false;
-    	if ( board[place.col][place.row] != 0 ) // The position is not empty
+    	return makeMove(geometry.square(place.col, place.row));
+    }
+
+    /**
+     * Returns the index of the square at the given position, as used by {@link #makeMove(int)}.
+     * Squares are numbered column by column: the index of (col, row) is col * size + row.
+     */
+    public int square(Position place){
+    	return geometry.square(place.col, place.row);
+    }
+
+    /**
+     * Puts a token for the current player on the square with the given index, like insertToken,
+     * and records the move so that it can be taken back with {@link #unmakeMove()}.
+     * Returns false, without changing anything, if the move is not legal.
+     */
+    public boolean makeMove(int sq){
+    	if ( sq < 0 || sq >= geometry.squares )
     		return false;
+    	if ( BitboardN.get(black, sq) || BitboardN.get(white, sq) ) // The position is not empty
+    		return false;
+    	ensureHistoryCapacity();
 
-    	boolean capturesFound = false;
-    	// Capturing all possible opponents of the current player
-    	for (int deltaX = -1; deltaX <= 1; deltaX++){
-    		for (int deltaY = -1; deltaY <= 1; deltaY++){
-        		int captives = captureInDirection(place, deltaX, deltaY); 
-        		if ( captives > 0){
-        			capturesFound = true;
-        			for ( int i = 1; i <= captives; i++)
-        				board[place.col+deltaX*i][place.row+deltaY*i]=currentPlayer;
-        		}
-        	}		
-    	}
-    	
-    	if ( capturesFound ){
-    		// Place the token at the given place
-    		board[place.col][place.row] = currentPlayer;
-    		this.changePlayer();
-    		return true;
+    	long[] own = currentPlayer == 1 ? black : white;
+    	long[] opp = currentPlayer == 1 ? white : black;
+    	int start = historyTop;
+    	int captives;
+    	if ( size == Bitboard.SIZE ){
+    		long flips = Bitboard.flips(own[0], opp[0], sq);
+    		if ( flips == 0 )
+    			return false;
+    		own[0] |= flips | (1L << sq);
+    		opp[0] &= ~flips;
+    		captives = 0;
+    		for (long f = flips; f != 0; f &= f - 1)
+    			history[start + 1 + captives++] = Long.numberOfTrailingZeros(f);
     	}
     	else {
-    		return false;
+    		captives = geometry.flips(own, opp, sq, history, start + 1);
+    		if ( captives == 0 )
+    			return false;
+    		for (int i = start + 1; i <= start + captives; i++){
+    			BitboardN.set(own, history[i]);
+    			BitboardN.clear(opp, history[i]);
+    		}
+    		BitboardN.set(own, sq);
+    	}
+    	history[start] = sq;
+    	pushPly(start, start + 1 + captives);
+    	hash ^= zobrist.disc(currentPlayer, sq);
+    	for (int i = start + 1; i <= start + captives; i++)
+    		hash ^= zobrist.flip(history[i]);
+    	if ( squareWeights != null ){
+    		double gained = squareWeights[sq];
+    		double turned = 0;
+    		for (int i = start + 1; i <= start + captives; i++)
+    			turned += squareWeights[history[i]];
+    		if ( currentPlayer == 1 ){
+    			weighted1 += gained + turned;
+    			weighted2 -= turned;
+    		}
+    		else {
+    			weighted2 += gained + turned;
+    			weighted1 -= turned;
+    		}
     	}
+    	if ( patterns != null )
+    		updatePatterns(currentPlayer, start, start + captives, 1);
+    	boardStale = true;
+    	movesKnown = 0;
+    	this.changePlayer();
+    	return true;
     }
 
     /**
-     * Returns a list of all the positions on the board that constitutes a legal move for the current player.
+     * Skips the turn of the current player, like changePlayer, and records the pass so that it can
+     * be taken back with {@link #unmakeMove()}.
      */
-    public ArrayList<Position> legalMoves(){
-    	ArrayList<Position> posPlaces = new ArrayList<Position>();
-    	for (int i = 0; i < this.size; i++){
-    		for (int j = 0; j < this.size; j++){
-    			if ( board[i][j] == 0 ){
-    				posPlaces.add(new Position(i,j));
-    			}
+    public void makePass(){
+    	ensureHistoryCapacity();
+    	history[historyTop] = PASS;
+    	pushPly(historyTop, historyTop + 1);
+    	this.changePlayer();
+    }
+
+    /**
+     * Takes back the last move (or pass) made with {@link #makeMove(int)}, {@link #makePass()} or
+     * insertToken, restoring the board and the player in turn.
+     */
+    public void unmakeMove(){
+    	plies--;
+    	int start = plyStart[plies];
+    	int sq = history[start];
+    	currentPlayer = plyPlayer[plies];
+    	hash = plyHash[plies];
+    	weighted1 = plyWeighted[2 * plies];
+    	weighted2 = plyWeighted[2 * plies + 1];
+    	if ( sq != PASS ){
+    		long[] own = currentPlayer == 1 ? black : white;
+    		long[] opp = currentPlayer == 1 ? white : black;
+    		BitboardN.clear(own, sq);
+    		for (int i = start + 1; i < historyTop; i++){
+    			BitboardN.clear(own, history[i]);
+    			BitboardN.set(opp, history[i]);
     		}
+    		if ( patterns != null )
+    			updatePatterns(currentPlayer, start, historyTop - 1, -1);
+    		boardStale = true;
+    		movesKnown = 0;
     	}
-    	ArrayList<Position> legalPlaces = new ArrayList<Position>();
-    	for (Position p: posPlaces){
-    		for (int deltaX = -1; deltaX <= 1; deltaX++){
-    			for (int deltaY = -1; deltaY <= 1; deltaY++){
-    				if ( captureInDirection(p, deltaX, deltaY) > 0 ){
-    	    			legalPlaces.add(p);
-    				}
-    			}
-    		}
+    	historyTop = start;
+    }
+
+    /**
+     * Adds (sign 1) or takes back (sign -1) the change to the pattern indices made by the move of the
+     * given player recorded in history[start..last]: the square played, then the squares turned.
+     */
+    private void updatePatterns(int player, int start, int last, int sign){
+    	int[][] instances = patterns.squareInstances;
+    	int[][] powers = patterns.squarePowers;
+    	int placed = sign * player;				// the digit of the square played goes from 0 to player
+    	int turned = sign * (player == 1 ? -1 : 1);	// and that of each square turned from the other player to player
+    	int sq = history[start];
+    	for (int k = 0; k < instances[sq].length; k++)
+    		patternIndices[instances[sq][k]] += placed * powers[sq][k];
+    	for (int i = start + 1; i <= last; i++){
+    		sq = history[i];
+    		for (int k = 0; k < instances[sq].length; k++)
+    			patternIndices[instances[sq][k]] += turned * powers[sq][k];
+    	}
+    }
+
+    /**
+     * Returns the number of moves (and passes) that can be taken back with {@link #unmakeMove()}.
+     */
+    public int getMovesMade(){
+    	return plies;
+    }
+
+    /**
+     * Writes the square of the last move made, followed by the squares it turned, into the given array
+     * and returns how many squares were written: 0 if no move has been made or the last one was a pass.
+     * @param squares Array with room for at least {@link #getSquareCount()} entries.
+     */
+    public int lastMove(int[] squares){
+    	if ( plies == 0 || history[plyStart[plies - 1]] == PASS )
+    		return 0;
+    	int start = plyStart[plies - 1];
+    	System.arraycopy(history, start, squares, 0, historyTop - start);
+    	return historyTop - start;
+    }
+
+    private void pushPly(int start, int end){
+    	plyStart[plies] = start;
+    	plyPlayer[plies] = currentPlayer;
+    	plyHash[plies] = hash;
+    	plyWeighted[2 * plies] = weighted1;
+    	plyWeighted[2 * plies + 1] = weighted2;
+    	plies++;
+    	historyTop = end;
+    }
+
+    /**
+     * Makes sure the history has room for one more move, growing it if needed.
+     */
+    private void ensureHistoryCapacity(){
+    	if ( history == null ){
+    		history = new int[4 * (1 + geometry.maxFlips())];
+    		plyStart = new int[16];
+    		plyPlayer = new int[16];
+    		plyHash = new long[16];
+    		plyWeighted = new double[32];
+    	}
+    	if ( historyTop + 1 + geometry.maxFlips() > history.length )
+    		history = Arrays.copyOf(history, 2 * history.length + 1 + geometry.maxFlips());
+    	if ( plies == plyStart.length ){
+    		plyStart = Arrays.copyOf(plyStart, 2 * plies);
+    		plyPlayer = Arrays.copyOf(plyPlayer, 2 * plies);
+    		plyHash = Arrays.copyOf(plyHash, 2 * plies);
+    		plyWeighted = Arrays.copyOf(plyWeighted, 4 * plies);
     	}
-    	return legalPlaces;
     }	
-    
+	
     /**
-     * Checks how many tokens of the opponent the player can capture in the direction given by deltaX and deltaY
-     * if the player puts a token at the given position.
-     * @param p A position on the board
-     * @param deltaX The step to be taken in the x-direction. Should be -1 (left), 0 (none), or 1 (right).
-     * @param deltaY The step to be taken in the delta direction. Should be -1 (up), 0 (none), or 1 (down).
+     * Returns a list of all the positions on the board that constitutes a legal move for the current player.
+     * Each position occurs once, and the positions are ordered by column and then by row.
      */
-    private int captureInDirection(Position p, int deltaX, int deltaY){
-    	int opponent = (currentPlayer == 1 ? 2 : 1); 
-        
-    	int captured = 0;
-    	int cc = p.col;
-    	int rr = p.row;
-        while ( 0 <= cc+deltaX && cc+deltaX < size && 0 <= rr+deltaY && rr+deltaY < size 
-    			&& board[cc+deltaX][rr+deltaY] == opponent ){ 
-        	cc = cc + deltaX;
-        	rr = rr + deltaY;
-        	captured++;
-        }
-        if ( 0 <= cc+deltaX && cc+deltaX < size  && 0 <= rr+deltaY && rr+deltaY < size 
-    			&& board[cc+deltaX][rr+deltaY] == currentPlayer && captured > 0 ){
-        	return captured;
-        }
-        else
-        	return 0;
+    public ArrayList<Position> legalMoves(){
+    	if ( moveList == null )
+    		moveList = new int[geometry.squares];
+    	int n = legalMoves(moveList);
+    	ArrayList<Position> legalPlaces = new ArrayList<Position>(n);
+    	for (int i = 0; i < n; i++)
+    		legalPlaces.add(position(moveList[i]));
+    	return legalPlaces;
     }
 
+    /**
+     * Writes the square index (see {@link #square(Position)}) of every legal move for the current
+     * player into the given array and returns how many there are. Each square occurs once, in the
+     * same order as in {@link #legalMoves()}. Nothing is allocated.
+     * @param moves Array with room for at least {@link #getSquareCount()} entries.
+     */
+    public int legalMoves(int[] moves){
+    	long[] mask = moveMask(currentPlayer);
+    	int n = 0;
+    	for (int w = 0; w < mask.length; w++){
+    		for (long m = mask[w]; m != 0; m &= m - 1)
+    			moves[n++] = w * 64 + Long.numberOfTrailingZeros(m);
+    	}
+    	return n;
+    }
+
+    /**
+     * Returns the bitset of the legal moves of the given player, generated at most once for every
+     * board: it is kept until a move is made or taken back. Must not be changed by the caller.
+     */
+    private long[] moveMask(int player){
+    	if ( (movesKnown & player) != 0 )
+    		return moveMasks[player];
+    	if ( moveMasks == null ){
+    		moveMasks = new long[3][geometry.words];
+    		if ( size != Bitboard.SIZE )
+    			scratch = new long[geometry.scratchLength()];
+    	}
+    	long[] own = player == 1 ? black : white;
+    	long[] opp = player == 1 ? white : black;
+    	long[] mask = moveMasks[player];
+    	if ( size == Bitboard.SIZE )
+    		mask[0] = Bitboard.legalMoves(own[0], opp[0]);
+    	else
+    		geometry.legalMoves(own, opp, mask, scratch);
+    	movesKnown |= player;
+    	return mask;
+    }
+
+    /**
+     * Returns the position of the square with the given index.
+     */
+    public Position position(int sq){
+    	return new Position(sq / size, sq % size);
+    }
+
+    /**
+     * Returns the number of squares on the board, i.e. size * size.
+     */
+    public int getSquareCount(){
+    	return geometry.squares;
+    }	
+	
 }
+	
\ No newline at end of file
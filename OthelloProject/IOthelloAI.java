@@ -15,4 +15,15 @@ public interface IOthelloAI {
 	 */
 	public Position decideMove(GameState s);
 	
+	/**
+	 * Calculates the move to make for the given game state in a game played with chess clocks.
+	 * AIs that do not override this ignore the clock; they lose the game if they run out of time.
+	 * @param s The current state of the game in which it should be the AI's turn.
+	 * @param clock The time the AI has left for the rest of the game, including this move.
+	 * @return the position where the AI wants to put its token.
+	 */
+	public default Position decideMove(GameState s, MoveClock clock){
+		return decideMove(s);
+	}
+	
 }
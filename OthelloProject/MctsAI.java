@@ -0,0 +1,426 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An AI that decides moves by Monte Carlo tree search: it plays as many random
+ * games from the position as it can in the time it has, and grows a tree of the
+ * moves that led to the best results. Needs no evaluation function and no
+ * depth, so it plays on large boards where alpha-beta search gets nowhere.
+ *
+ * Every playout walks down the tree from the root, choosing the child with the
+ * highest upper confidence bound (UCT: the share of playouts won plus a bonus
+ * for children with few playouts), expands the node it ends at once that has
+ * been visited EXPAND_VISITS times, and plays the rest of the game with random
+ * moves on a PlayoutBoard, which allocates nothing. The result, a win, draw or
+ * loss, is added to every node on the way down.
+ *
+ * Several threads grow the same tree without locks. The visits and wins of a
+ * node are packed into one long, changed with atomic adds, and children are
+ * attached with a compare-and-set. A visit is counted on the way down, before
+ * the result is known, so until the playout ends it counts as a loss (a
+ * virtual loss) and other threads are steered to other moves.
+ *
+ * The part of the tree below the position after our move and the opponent's
+ * reply is kept for the next move. The move played is the child of the root
+ * with the most playouts.
+ */
+public class MctsAI implements IOthelloAI {
+
+    private static final long DEFAULT_MOVE_TIME_MS = 1000;
+    private static final int DEFAULT_THREADS = 1;
+    private static final double DEFAULT_EXPLORATION = 0.7;
+    private static final int DEFAULT_MAX_NODES = 2_000_000;
+    // A leaf is expanded when it is visited for this many times
+    private static final int EXPAND_VISITS = 4;
+    // Part of the clock never used, and moves assumed to be left on top of those we expect (see OthelloAIDonathello)
+    private static final long CLOCK_RESERVE_MS = 50;
+    private static final int CLOCK_RESERVE_DIVISOR = 20;
+    private static final int SPARE_MOVES = 2;
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * A node of the tree: the position after a move. Visits are in the high half
+     * of stats and wins, counted in half points (2 for a win, 1 for a draw), for
+     * the player who made the move in the low half.
+     */
+    static final class Node {
+
+        private static final VarHandle STATS;
+        private static final VarHandle CHILDREN;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                STATS = lookup.findVarHandle(Node.class, "stats", long.class);
+                CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final int move;
+        private volatile long stats;
+        // null until expanded; empty if the game is over
+        private volatile Node[] children;
+
+        Node(int move) {
+            this.move = move;
+        }
+
+        int visits() {
+            return (int) (stats >>> 32);
+        }
+
+        void addVisit() {
+            STATS.getAndAdd(this, 1L << 32);
+        }
+
+        void addWins(int halfPoints) {
+            STATS.getAndAdd(this, (long) halfPoints);
+        }
+
+        // Returns the children actually attached, which are another thread's if it got there first
+        Node[] attach(Node[] expanded) {
+            return CHILDREN.compareAndSet(this, null, expanded) ? expanded : children;
+        }
+    }
+
+    private long moveTimeMillis = Long.getLong("mcts.moveTimeMs", DEFAULT_MOVE_TIME_MS);
+    private double exploration = Double.parseDouble(System.getProperty("mcts.exploration",
+            String.valueOf(DEFAULT_EXPLORATION)));
+    private int maxNodes = Integer.getInteger("mcts.maxNodes", DEFAULT_MAX_NODES);
+    private int threads;
+    private ExecutorService executor;
+    private SplittableRandom random = new SplittableRandom();
+
+    // The tree kept between moves, and the position at its root
+    private Node root;
+    private PlayoutBoard rootBoard;
+    private final AtomicInteger nodes = new AtomicInteger();
+    // Set when the thread calling decideMove is interrupted, to stop all searching threads
+    private volatile boolean stopping;
+
+    private long playouts;
+    private long lastPlayouts;
+    private long lastNanos;
+
+    public MctsAI() {
+        setThreads(Integer.getInteger("mcts.threads", DEFAULT_THREADS));
+    }
+
+    /**
+     * Sets the number of threads to search with. Defaults to the system property
+     * mcts.threads, or 1.
+     */
+    public void setThreads(int threads) {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        this.threads = Math.max(1, threads);
+        executor = threads > 1 ? Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread thread = new Thread(r, "mcts-worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Sets the time decideMove may use to search, in milliseconds. Defaults to the
+     * system property mcts.moveTimeMs, or 1000.
+     */
+    public void setMoveTime(long millis) {
+        moveTimeMillis = millis;
+    }
+
+    /**
+     * Sets the weight of the exploration bonus in UCT. Defaults to the system
+     * property mcts.exploration, or 0.7.
+     */
+    public void setExploration(double exploration) {
+        this.exploration = exploration;
+    }
+
+    /**
+     * Sets the number of nodes after which the tree stops growing, to bound the
+     * memory used. Defaults to the system property mcts.maxNodes, or 2000000.
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Seeds the random moves of the playouts, so searches with one thread can be
+     * repeated.
+     */
+    public void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Returns the number of playouts played by this AI so far.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Returns the number of playouts of the last call to decideMove and the time
+     * it took in nanoseconds.
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     */
+    public int getNodes() {
+        return nodes.get();
+    }
+
+    /**
+     * Decides a move in a game played with a clock: the clock, less a reserve, is
+     * shared out over the moves we still expect to make, and most of the
+     * increment is added.
+     */
+    @Override
+    public Position decideMove(GameState s, MoveClock clock) {
+        long remaining = clock.getRemainingMillis();
+        long usable = remaining - CLOCK_RESERVE_MS - remaining / CLOCK_RESERVE_DIVISOR;
+        int empties = s.getSquareCount() - s.countTokens(1) - s.countTokens(2);
+        double time = (double) usable / ((empties + 1) / 2 + SPARE_MOVES) + 0.75 * clock.getIncrementMillis();
+        long moveTime = moveTimeMillis;
+        moveTimeMillis = Math.max(0, (long) Math.min(time, usable / 4.0));
+        try {
+            return decideMove(s);
+        } finally {
+            moveTimeMillis = moveTime;
+        }
+    }
+
+    @Override
+    public Position decideMove(GameState s) {
+        long start = System.nanoTime();
+        // toNanos saturates, and so does the addition, so huge move times mean no deadline
+        long moveNanos = TimeUnit.MILLISECONDS.toNanos(moveTimeMillis);
+        long deadline = start > Long.MAX_VALUE - moveNanos ? Long.MAX_VALUE : start + moveNanos;
+        int size = s.getBoard().length;
+        int reusedVisits = moveToRoot(s, size);
+        Node[] children = root.children;
+        if (children == null) {
+            Node[] expanded = expand(rootBoard, new int[rootBoard.getSize() * rootBoard.getSize()]);
+            children = root.attach(expanded);
+            if (children == expanded) {
+                nodes.addAndGet(children.length);
+            }
+        }
+        if (children.length == 0) {
+            return new Position(-1, -1);
+        }
+
+        long count = 0;
+        stopping = false;
+        if (children.length > 1) {
+            List<Future<Long>> workers = new ArrayList<>();
+            for (int t = 1; t < threads; t++) {
+                SplittableRandom workerRandom = random.split();
+                workers.add(executor.submit(() -> search(deadline, workerRandom)));
+            }
+            count = search(deadline, random);
+            // Wait for the workers even if interrupted, so none touches the tree after we return
+            boolean interrupted = false;
+            for (int i = 0; i < workers.size(); ) {
+                try {
+                    count += workers.get(i).get();
+                    i++;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stopping = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Node best = children[0];
+        for (Node child : children) {
+            if (child.visits() > best.visits()
+                    || (child.visits() == best.visits() && (int) child.stats > (int) best.stats)) {
+                best = child;
+            }
+        }
+        lastNanos = System.nanoTime() - start;
+        lastPlayouts = count;
+        playouts += count;
+        int visits = best.visits();
+        System.out.printf(Locale.ROOT, "MCTS: %d playouts in %dms (%.0f/s) on %d threads, %d reused, %d nodes;"
+                + " best move won %.1f%% of %d playouts%n", count, lastNanos / 1_000_000, count / (lastNanos / 1e9),
+                threads, reusedVisits, nodes.get(), visits == 0 ? 0 : 50.0 * (int) best.stats / visits, visits);
+
+        root = best;
+        rootBoard.play(best.move);
+        return s.position(best.move);
+    }
+
+    /**
+     * Makes the root the node of s: the child of the old root for the opponent's
+     * reply if the tree has it, else a new node. Returns the visits of the tree
+     * kept.
+     */
+    private int moveToRoot(GameState s, int size) {
+        if (root != null && rootBoard.getSize() == size && root.children != null) {
+            PlayoutBoard board = new PlayoutBoard(size);
+            for (Node reply : root.children) {
+                board.set(rootBoard);
+                board.play(reply.move);
+                if (board.matches(s)) {
+                    root = reply;
+                    rootBoard.set(board);
+                    nodes.set(countNodes(root));
+                    return root.visits();
+                }
+            }
+        }
+        root = new Node(GameState.PASS);
+        rootBoard = new PlayoutBoard(size);
+        rootBoard.set(s);
+        nodes.set(1);
+        return 0;
+    }
+
+    private static int countNodes(Node node) {
+        int count = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            count++;
+            Node[] children = n.children;
+            if (children != null) {
+                for (Node child : children) {
+                    stack.push(child);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Plays playouts from the root until the deadline, or until the thread that
+     * called decideMove is interrupted, and returns how many.
+     */
+    private long search(long deadline, SplittableRandom random) {
+        int squares = rootBoard.getSize() * rootBoard.getSize();
+        PlayoutBoard board = new PlayoutBoard(rootBoard.getSize());
+        int[] moves = new int[squares];
+        // Every move is a disc or a pass, and there are never two passes in a row
+        Node[] path = new Node[2 * squares + 2];
+        int[] movers = new int[path.length];
+        long count = 0;
+        do {
+            playout(board, moves, path, movers, random);
+            count++;
+            if (Thread.currentThread().isInterrupted()) {
+                stopping = true;
+            }
+        } while (!stopping && System.nanoTime() < deadline);
+        return count;
+    }
+
+    private void playout(PlayoutBoard board, int[] moves, Node[] path, int[] movers, SplittableRandom random) {
+        board.set(rootBoard);
+        Node node = root;
+        node.addVisit();
+        int depth = 0;
+        while (true) {
+            Node[] children = node.children;
+            if (children == null) {
+                if (node.visits() < EXPAND_VISITS || nodes.get() >= maxNodes) {
+                    break;
+                }
+                Node[] expanded = expand(board, moves);
+                children = node.attach(expanded);
+                // Count the children only if ours were attached, not another thread's
+                if (children == expanded) {
+                    nodes.addAndGet(children.length);
+                }
+            }
+            if (children.length == 0) {
+                break;
+            }
+            node = select(node, children);
+            node.addVisit();
+            depth++;
+            path[depth] = node;
+            movers[depth] = board.getPlayerInTurn();
+            board.play(node.move);
+        }
+
+        int result = board.playRandom(random);
+        int winner = result > 0 ? 1 : result < 0 ? 2 : 0;
+        for (int i = 1; i <= depth; i++) {
+            int halfPoints = winner == 0 ? 1 : winner == movers[i] ? 2 : 0;
+            if (halfPoints != 0) {
+                path[i].addWins(halfPoints);
+            }
+        }
+    }
+
+    /**
+     * Returns new nodes for the moves of the player in turn on the board: a pass
+     * if only the other player can move, and none if the game is over.
+     */
+    private static Node[] expand(PlayoutBoard board, int[] moves) {
+        int n = board.legalMoves(moves);
+        if (n == 0) {
+            return board.hasLegalMoves(3 - board.getPlayerInTurn())
+                    ? new Node[] {new Node(GameState.PASS)} : NO_CHILDREN;
+        }
+        Node[] children = new Node[n];
+        for (int i = 0; i < n; i++) {
+            children[i] = new Node(moves[i]);
+        }
+        return children;
+    }
+
+    /**
+     * Returns the child with the highest upper confidence bound, or the first
+     * that has not been visited.
+     */
+    private Node select(Node parent, Node[] children) {
+        double logVisits = Math.log(parent.visits());
+        Node best = null;
+        double bestBound = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            long stats = child.stats;
+            int visits = (int) (stats >>> 32);
+            if (visits == 0) {
+                return child;
+            }
+            double bound = (int) stats / (2.0 * visits) + exploration * Math.sqrt(logVisits / visits);
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = child;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Measures the playouts per second of MctsAI with different numbers of threads.
+ *
+ * Every position of a fixed corpus is searched for the same time with each of
+ * the given thread counts, using a fresh AI each time. For each thread count the
+ * report shows the total playouts, playouts per second, and the speedup over one
+ * thread.
+ *
+ * Usage: java MctsSpeedup [millis] [positions] [size] [threads...]
+ * Defaults: 500 ms, 10 positions, 16x16, and 1, 2, 4, ... up to the number of cores.
+ */
+public class MctsSpeedup {
+
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 500;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int[] threads;
+        if (args.length > 3) {
+            threads = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                threads[i - 3] = Integer.parseInt(args[i]);
+            }
+        } else {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int n = 1;
+            while ((1 << n) <= cores) {
+                n++;
+            }
+            threads = new int[n];
+            for (int i = 0; i < n; i++) {
+                threads[i] = 1 << i;
+            }
+        }
+
+        List<GameState> positions = PositionCorpus.midgame(size, count, 2018);
+        System.out.println("Searching " + count + " positions of size " + size + " for " + millis + "ms each");
+        System.out.println("threads    playouts  playouts/s  speedup");
+
+        long[] serial = null;
+        for (int t : threads) {
+            long[] result = run(positions, millis, t);
+            if (serial == null) {
+                serial = result;
+            }
+            double rate = result[1] / (result[0] / 1e9);
+            double serialRate = serial[1] / (serial[0] / 1e9);
+            System.out.printf("%7d %11d %11.0f %8.2f%n", t, result[1], rate, rate / serialRate);
+        }
+    }
+
+    /**
+     * Returns the total time in nanoseconds and the total number of playouts.
+     */
+    private static long[] run(List<GameState> positions, long millis, int threads) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long time = 0;
+        long playouts = 0;
+        try {
+            for (GameState s : positions) {
+                MctsAI ai = new MctsAI();
+                ai.setThreads(threads);
+                ai.setMoveTime(millis);
+                ai.decideMove(s);
+                time += ai.getLastNanos();
+                playouts += ai.getLastPlayouts();
+                ai.setThreads(1);
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return new long[] {time, playouts};
+    }
+}
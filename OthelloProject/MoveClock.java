@@ -0,0 +1,40 @@
+/**
+ * The clock of the player in turn at the moment the player is asked for a move,
+ * as passed to {@link IOthelloAI#decideMove(GameState, MoveClock)}.
+ *
+ * The remaining time includes the time of the move being decided. If it runs
+ * out before the move is made, the player loses the game. After every move the
+ * increment is added to the clock of the player that made it.
+ */
+public final class MoveClock {
+
+    private final long remainingMillis;
+    private final long incrementMillis;
+    private final long opponentRemainingMillis;
+
+    public MoveClock(long remainingMillis, long incrementMillis, long opponentRemainingMillis) {
+        this.remainingMillis = remainingMillis;
+        this.incrementMillis = incrementMillis;
+        this.opponentRemainingMillis = opponentRemainingMillis;
+    }
+
+    /** Returns the time left on the clock of the player in turn, in milliseconds. */
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+
+    /** Returns the time added to a player's clock after each of its moves, in milliseconds. */
+    public long getIncrementMillis() {
+        return incrementMillis;
+    }
+
+    /** Returns the time left on the clock of the other player, in milliseconds. */
+    public long getOpponentRemainingMillis() {
+        return opponentRemainingMillis;
+    }
+
+    @Override
+    public String toString() {
+        return GameClock.format(remainingMillis) + " + " + incrementMillis + "ms";
+    }
+}
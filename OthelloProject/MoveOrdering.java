@@ -0,0 +1,117 @@
+/**
+ * Decides the order in which AlphaBetaSearch tries the moves of a node. Alpha
+ * beta pruning cuts off more of the tree the earlier the best move is tried.
+ *
+ * Moves are tried in this order:
+ * <ol>
+ * <li>the hash move, i.e. the best move stored in the transposition table,
+ * which at the root is the best move of the previous iteration;</li>
+ * <li>the two killer moves of the ply, i.e. the moves that most recently
+ * caused a cutoff at the same distance from the root;</li>
+ * <li>the remaining moves by history score, which grows every time a move
+ * causes a cutoff anywhere in the tree;</li>
+ * <li>moves with equal history by the static weight of their square, as
+ * assigned in OthelloAIDonathello.buildWeightedGameBoard.</li>
+ * </ol>
+ *
+ * The killer and history tables are shared by the workers of a parallel
+ * search. They are only hints, so unsynchronized updates do no harm.
+ */
+public class MoveOrdering {
+
+    private static final int MAX_PLY = 128;
+    private static final long HASH_MOVE = 3L << 60;
+    private static final long KILLER_1 = 2L << 60;
+    private static final long KILLER_2 = 1L << 60;
+    private static final long MAX_HISTORY = (1L << 40) - 1;
+
+    /** Number of squares on the boards this ordering is for. */
+    public final int squares;
+
+    private final int[] staticRank;
+    private final long[] history;
+    private final int[][] killers = new int[MAX_PLY][2];
+
+    /**
+     * Creates an ordering for boards with the given static weight per square.
+     */
+    public MoveOrdering(double[] squareWeights) {
+        squares = squareWeights.length;
+        history = new long[squares];
+        staticRank = new int[squares];
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double w : squareWeights) {
+            min = Math.min(min, w);
+            max = Math.max(max, w);
+        }
+        for (int sq = 0; sq < squares; sq++) {
+            staticRank[sq] = max == min ? 0 : (int) Math.round((squareWeights[sq] - min) / (max - min) * 255);
+        }
+        for (int[] k : killers) {
+            k[0] = -1;
+            k[1] = -1;
+        }
+    }
+
+    /**
+     * Starts a new search. Killers are forgotten and history scores are halved, so
+     * recent cutoffs count more than old ones.
+     */
+    public void newSearch() {
+        for (int sq = 0; sq < squares; sq++) {
+            history[sq] >>= 1;
+        }
+        for (int[] k : killers) {
+            k[0] = -1;
+            k[1] = -1;
+        }
+    }
+
+    /**
+     * Sorts the first n moves in place, best first.
+     *
+     * @param hashMove square of the hash move, or -1 if none.
+     * @param keys     scratch array with room for n entries.
+     */
+    public void order(int[] moves, int n, int hashMove, int ply, long[] keys) {
+        int[] killer = ply < MAX_PLY ? killers[ply] : killers[MAX_PLY - 1];
+        int killer1 = killer[0];
+        int killer2 = killer[1];
+        for (int i = 0; i < n; i++) {
+            int sq = moves[i];
+            long key = Math.min(history[sq], MAX_HISTORY) << 8 | staticRank[sq];
+            if (sq == hashMove) {
+                key |= HASH_MOVE;
+            } else if (sq == killer1) {
+                key |= KILLER_1;
+            } else if (sq == killer2) {
+                key |= KILLER_2;
+            }
+            // insertion sort, descending by key
+            int j = i;
+            while (j > 0 && keys[j - 1] < key) {
+                keys[j] = keys[j - 1];
+                moves[j] = moves[j - 1];
+                j--;
+            }
+            keys[j] = key;
+            moves[j] = sq;
+        }
+    }
+
+    /**
+     * Records that the given move caused a cutoff at the given ply, with the given
+     * depth left to search.
+     */
+    public void recordCutoff(int move, int ply, int depth) {
+        history[move] += (long) depth * depth;
+        if (ply < MAX_PLY) {
+            int[] killer = killers[ply];
+            if (killer[0] != move) {
+                killer[1] = killer[0];
+                killer[0] = move;
+            }
+        }
+    }
+}
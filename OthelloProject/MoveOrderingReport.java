@@ -0,0 +1,56 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Measures how much move ordering reduces the search of OthelloAIDonathello.
+ *
+ * Every position of a fixed corpus is searched to the same depth by a fresh AI,
+ * once with the moves in GameState.legalMoves order and once ordered by
+ * MoveOrdering, and the total nodes and time of each are reported.
+ *
+ * Usage: java MoveOrderingReport [depth] [positions] [size]
+ * Defaults: depth 8, 20 positions, 8x8.
+ */
+public class MoveOrderingReport {
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        List<GameState> positions = PositionCorpus.midgame(size, count, 2018);
+        System.out.println("Searching " + count + " positions of size " + size + " to depth " + depth);
+        System.out.println("ordering        ms        nodes");
+        long[] unordered = run(positions, depth, false);
+        long[] ordered = run(positions, depth, true);
+        System.out.printf("off       %8.0f %12d%n", unordered[0] / 1e6, unordered[1]);
+        System.out.printf("on        %8.0f %12d%n", ordered[0] / 1e6, ordered[1]);
+        System.out.printf("nodes searched with ordering: %.1f%%%n", 100.0 * ordered[1] / unordered[1]);
+    }
+
+    /**
+     * Returns the total time in nanoseconds and the total number of nodes.
+     */
+    private static long[] run(List<GameState> positions, int depth, boolean orderMoves) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long time = 0;
+        long nodes = 0;
+        try {
+            for (GameState s : positions) {
+                OthelloAIDonathello ai = new OthelloAIDonathello();
+                ai.setMoveOrdering(orderMoves);
+                ai.setMaxDepth(depth);
+                ai.setMoveTime(Long.MAX_VALUE / 4_000_000);
+                long start = System.nanoTime();
+                ai.decideMove(s);
+                time += System.nanoTime() - start;
+                nodes += ai.getNodes();
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return new long[] {time, nodes};
+    }
+}
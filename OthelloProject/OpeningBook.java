@@ -0,0 +1,141 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Opening book: the best move, found by a deep search, for positions early in
+ * the game.
+ *
+ * Positions that are the same up to one of the 8 symmetries of the board
+ * (rotations and reflections) share one entry. An entry is keyed by the
+ * canonical hash of the position (see {@link Symmetry}), and its move is stored
+ * as played in the canonical form. A lookup maps the move back to the position
+ * asked about.
+ *
+ * The book is a file with a 16 byte header (magic number, version, board size,
+ * number of entries) followed by entries of 16 bytes (key, move, search depth)
+ * sorted by key. The file is memory-mapped, so opening a book reads nothing into
+ * the heap, and a lookup is a binary search over the mapped entries. Books are
+ * built by OpeningBookBuilder.
+ */
+public final class OpeningBook {
+
+    private static final int MAGIC = 0x4F42_4B31; // "OBK1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+
+    private final MappedByteBuffer entries;
+    private final int size;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer entries, int size, int count) {
+        this.entries = entries;
+        this.size = size;
+        this.count = count;
+    }
+
+    /**
+     * Memory-maps the book in the given file.
+     *
+     * @throws IOException if the file cannot be read or is not a book.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(file + " is not an opening book");
+            }
+            int size = buffer.getInt(8);
+            int count = buffer.getInt(12);
+            if (buffer.limit() != HEADER_BYTES + (long) count * ENTRY_BYTES) {
+                throw new IOException(file + " is truncated");
+            }
+            return new OpeningBook(buffer, size, count);
+        }
+    }
+
+    /**
+     * Returns the number of columns (and rows) of the boards in this book.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of positions in this book.
+     */
+    public int getEntries() {
+        return count;
+    }
+
+    /**
+     * Returns the book move for s, or null if s is not in the book.
+     */
+    public Position lookup(GameState s) {
+        if (s.getSquareCount() != size * size) {
+            return null;
+        }
+        Symmetry symmetry = Symmetry.forSize(size);
+        long[] hashes = new long[Symmetry.COUNT];
+        symmetry.hashes(s, hashes);
+        int transform = Symmetry.canonicalTransform(hashes);
+        int entry = find(hashes[transform]);
+        if (entry < 0) {
+            return null;
+        }
+        int move = entries.getInt(HEADER_BYTES + entry * ENTRY_BYTES + 8);
+        return s.position(symmetry.fromCanonical(transform, move));
+    }
+
+    /**
+     * Returns the index of the entry with the given key, or -1 if there is none.
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long k = entries.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+            if (k < key) {
+                low = mid + 1;
+            } else if (k > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a book with the given entries to the given file. The arrays hold the
+     * key, canonical move and search depth of each entry, in any order.
+     */
+    public static void write(Path file, int size, long[] keys, int[] moves, int[] depths) throws IOException {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        try (OutputStream stream = Files.newOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(keys.length);
+            for (int i : order) {
+                out.writeLong(keys[i]);
+                out.writeInt(moves[i]);
+                out.writeInt(depths[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds an OpeningBook by searching every position reachable from the start
+ * position in a given number of moves.
+ *
+ * Positions that are the same up to a symmetry of the board are searched once.
+ * Every position is searched to a fixed depth by OthelloAIDonathello, without
+ * a time limit, and the move it decides on is stored in the book. Positions with
+ * a single legal move are left out, as decideMove plays those without searching.
+ * The searches run in parallel, one AI per thread.
+ *
+ * Usage: java OpeningBookBuilder [-size N] [-plies N] [-depth N] [-threads N] [-out file]
+ * Defaults: 8x8, positions up to 6 moves in, depth 8, one thread per core,
+ * opening.book (where OthelloAIDonathello looks for it by default).
+ */
+public class OpeningBookBuilder {
+
+    public static void main(String[] args) throws Exception {
+        int size = 8;
+        int plies = 6;
+        int depth = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = "opening.book";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size": size = Integer.parseInt(args[++i]); break;
+                case "-plies": plies = Integer.parseInt(args[++i]); break;
+                case "-depth": depth = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                default:
+                    System.err.println("Usage: java OpeningBookBuilder [-size N] [-plies N] [-depth N] "
+                            + "[-threads N] [-out file]");
+                    System.exit(1);
+            }
+        }
+
+        List<GameState> positions = positions(size, plies);
+        System.out.println(positions.size() + " positions up to " + plies + " moves in, searching to depth "
+                + depth + " on " + threads + " threads");
+
+        int searchDepth = depth;
+        ThreadLocal<OthelloAIDonathello> ais = ThreadLocal.withInitial(() -> {
+            OthelloAIDonathello ai = new OthelloAIDonathello();
+            ai.setOpeningBook(null);
+            ai.setMaxDepth(searchDepth);
+            ai.setMoveTime(Long.MAX_VALUE / 4_000_000);
+            return ai;
+        });
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (GameState s : positions) {
+                futures.add(executor.submit(() -> {
+                    OthelloAIDonathello ai = ais.get();
+                    Position move = ai.decideMove(new GameState(s));
+                    Symmetry symmetry = Symmetry.forSize(s.getBoard().length);
+                    int canonicalMove = symmetry.toCanonical(symmetry.canonicalTransform(s), s.square(move));
+                    return new int[] {canonicalMove, ai.getCompletedDepth()};
+                }));
+            }
+            long[] keys = new long[positions.size()];
+            int[] moves = new int[keys.length];
+            int[] depths = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                int[] result = futures.get(i).get();
+                keys[i] = Symmetry.forSize(size).canonicalHash(positions.get(i));
+                moves[i] = result[0];
+                depths[i] = result[1];
+                if ((i + 1) % 100 == 0) {
+                    console.println((i + 1) + " positions searched");
+                }
+            }
+            Path file = Paths.get(out);
+            OpeningBook.write(file, size, keys, moves, depths);
+            console.printf("Wrote %d positions to %s in %.1fs%n", keys.length, file,
+                    (System.nanoTime() - start) / 1e9);
+        } finally {
+            System.setOut(console);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns one position for each class of symmetric positions reachable from
+     * the start position in at most the given number of moves, leaving out
+     * positions with fewer than two legal moves.
+     */
+    static List<GameState> positions(int size, int plies) {
+        Symmetry symmetry = Symmetry.forSize(size);
+        Map<Long, GameState> found = new LinkedHashMap<>();
+        List<GameState> frontier = new ArrayList<>();
+        frontier.add(new GameState(size, 1));
+        int[] moves = new int[size * size];
+        int[] replies = new int[size * size];
+        for (int ply = 0; ply <= plies; ply++) {
+            List<GameState> next = new ArrayList<>();
+            for (GameState s : frontier) {
+                if (found.putIfAbsent(symmetry.canonicalHash(s), s) != null) {
+                    continue;
+                }
+                int n = s.legalMoves(moves);
+                for (int i = 0; i < n && ply < plies; i++) {
+                    GameState child = new GameState(s);
+                    child.makeMove(moves[i]);
+                    if (child.legalMoves(replies) == 0) {
+                        child.makePass();
+                    }
+                    next.add(child);
+                }
+            }
+            frontier = next;
+        }
+        List<GameState> positions = new ArrayList<>();
+        for (GameState s : found.values()) {
+            if (s.legalMoves(moves) > 1) {
+                positions.add(s);
+            }
+        }
+        return positions;
+    }
+}
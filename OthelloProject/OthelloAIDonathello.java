@@ -1,5 +1,11 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class OthelloAIDonathello implements IOthelloAI {
 
@@ -16,6 +22,8 @@ public class OthelloAIDonathello implements IOthelloAI {
     private double positionHExtreme;
 
     private double[][] weightedBoard = null;
+    // weightedBoard indexed by square (see GameState.square), for incremental evaluation
+    private double[] squareWeights = null;
 
     private int boardSize;
     private double boardSizeD;
@@ -23,6 +31,265 @@ public class OthelloAIDonathello implements IOthelloAI {
     private int boardLength;
     private boolean initial;
 
+    // The player we are searching for; utilities are always from this player's view,
+    // also those in the transposition table, which is cleared when the player changes
+    private int player;
+
+    private static final int DEFAULT_HASH_MB = 32;
+    private static final long DEFAULT_MOVE_TIME_MS = 1000;
+    private static final int DEFAULT_MAX_DEPTH = 64;
+    private static final int DEFAULT_THREADS = 1;
+    private static final int DEFAULT_ENDGAME_EMPTIES = 14;
+    // Pondering stops after this many times the move time, if the opponent has not moved by then
+    private static final int MAX_PONDER_MOVES = 20;
+    // Part of the clock never used, for the time between the deadline and returning the move
+    private static final long CLOCK_RESERVE_MS = 50;
+    private static final int CLOCK_RESERVE_DIVISOR = 20;
+    // Moves assumed to be left on top of those we expect, so the clock lasts if the game runs long
+    private static final int SPARE_MOVES = 2;
+
+    // Time allowed per move and the deepest iteration to start
+    private long moveTimeMillis = Long.getLong("donathello.moveTimeMs", DEFAULT_MOVE_TIME_MS);
+    private int maxDepth = Integer.getInteger("donathello.maxDepth", DEFAULT_MAX_DEPTH);
+
+    // Positions with at most this many empty squares are solved exactly
+    private int endgameEmpties = Integer.getInteger("donathello.endgameEmpties", DEFAULT_ENDGAME_EMPTIES);
+
+    private int completedDepth;
+    // How much longer than allocated recent moves with a clock took, in milliseconds; decays by a quarter per move
+    private long overrunMillis;
+
+    // Kept between calls to decideMove, so later searches reuse earlier results
+    private final TranspositionTable transpositionTable;
+    private final AlphaBetaSearch search;
+    private final EndgameSolver endgameSolver = new EndgameSolver();
+    private OpeningBook openingBook;
+    private PatternEvaluator patternEvaluator;
+    private final Ponderer ponderer;
+    private boolean pondering;
+    private SearchListener listener = new ConsoleSearchListener();
+    // Statistics of the decision being made, or last made, by decideMove
+    private SearchStats decision = new SearchStats();
+    private ForkJoinPool pool;
+
+    /**
+     * Creates the AI with a transposition table of the size given by the system
+     * property donathello.hashMB, or 32 MB if it is not set.
+     */
+    public OthelloAIDonathello() {
+        this(Integer.getInteger("donathello.hashMB", DEFAULT_HASH_MB));
+    }
+
+    /**
+     * Creates the AI with a transposition table using at most the given number
+     * of megabytes.
+     */
+    public OthelloAIDonathello(int hashMegabytes) {
+        transpositionTable = new TranspositionTable(hashMegabytes);
+        search = new AlphaBetaSearch(this, transpositionTable);
+        ponderer = new Ponderer(this, transpositionTable);
+        setThreads(Integer.getInteger("donathello.threads", DEFAULT_THREADS));
+        setMoveOrdering(!"false".equals(System.getProperty("donathello.moveOrdering")));
+        openingBook = loadOpeningBook(Paths.get(System.getProperty("donathello.book", "opening.book")));
+        patternEvaluator = loadPatternEvaluator(Paths.get(System.getProperty("donathello.weights", "patterns.weights")));
+        pondering = Boolean.getBoolean("donathello.ponder");
+    }
+
+    /**
+     * Returns the book in the given file, or null if there is no such file or it
+     * is not a book.
+     */
+    private static OpeningBook loadOpeningBook(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException e) {
+            System.err.println("Not using opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the pattern weights in the given file, or null if there is no such
+     * file or it does not hold pattern weights.
+     */
+    private static PatternEvaluator loadPatternEvaluator(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return PatternEvaluator.load(file);
+        } catch (IOException e) {
+            System.err.println("Not using pattern weights: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets the pattern weights the heuristic evaluates positions with, on boards
+     * of their size, or null to always use the heatmap. Defaults to the weights in
+     * the file given by the system property donathello.weights, or
+     * patterns.weights, if that file exists.
+     */
+    public void setPatternEvaluator(PatternEvaluator evaluator) {
+        patternEvaluator = evaluator;
+    }
+
+    /**
+     * Sets the book decideMove plays from while the position is in it, or null to
+     * always search. Defaults to the book in the file given by the system property
+     * donathello.book, or opening.book, if that file exists.
+     */
+    public void setOpeningBook(OpeningBook book) {
+        openingBook = book;
+    }
+
+    /**
+     * Sets the number of threads to search with. With more than one thread the
+     * search is split over a ForkJoinPool of that size (see AlphaBetaSearch).
+     * Defaults to the system property donathello.threads, or 1.
+     */
+    public void setThreads(int threads) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        search.setPool(pool);
+        ponderer.setPool(pool);
+    }
+
+    /**
+     * Sets whether the search orders moves (see MoveOrdering). Defaults to the
+     * system property donathello.moveOrdering, or true.
+     */
+    public void setMoveOrdering(boolean orderMoves) {
+        search.setMoveOrdering(orderMoves);
+        ponderer.setMoveOrdering(orderMoves);
+    }
+
+    /**
+     * Sets whether to keep searching on the opponent's time after decideMove has
+     * returned, assuming the opponent makes the reply the search expects (see
+     * Ponderer). Defaults to the system property donathello.ponder, or false.
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            ponderer.stop();
+        }
+    }
+
+    /**
+     * Returns the number of nodes searched by this AI so far, including nodes
+     * searched by the endgame solver and while pondering.
+     */
+    public long getNodes() {
+        return search.getNodes() + endgameSolver.getNodes() + ponderer.getNodes();
+    }
+
+    /**
+     * Sets the time decideMove may use to search, in milliseconds. Defaults to the
+     * system property donathello.moveTimeMs, or 1000.
+     */
+    public void setMoveTime(long millis) {
+        moveTimeMillis = millis;
+    }
+
+    /**
+     * Sets the listener told about every iteration of the search and every
+     * decided move. Defaults to a ConsoleSearchListener.
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the statistics of the last decision made by decideMove, including
+     * its principal variation.
+     */
+    public SearchStats getLastDecision() {
+        return decision;
+    }
+
+    /**
+     * Returns the depth of the deepest iteration completed by the last call to
+     * decideMove that searched.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Sets the deepest iteration decideMove will search. Defaults to the system
+     * property donathello.maxDepth, or 64.
+     */
+    public void setMaxDepth(int depth) {
+        maxDepth = depth;
+    }
+
+    /**
+     * Sets the number of empty squares at or below which decideMove solves the
+     * position exactly with an EndgameSolver instead of searching it with the
+     * heuristic. 0 turns the solver off. Defaults to the system property
+     * donathello.endgameEmpties, or 14.
+     */
+    public void setEndgameEmpties(int empties) {
+        endgameEmpties = empties;
+    }
+
+    /**
+     * Decides a move in a game played with a clock: the time given to the search
+     * is that of allocateMoveTime instead of the move time.
+     */
+    @Override
+    public Position decideMove(GameState s, MoveClock clock) {
+        long moveTime = moveTimeMillis;
+        long allocated = allocateMoveTime(s, clock);
+        long start = System.nanoTime();
+        moveTimeMillis = allocated;
+        try {
+            return decideMove(s);
+        } finally {
+            moveTimeMillis = moveTime;
+            long overrun = (System.nanoTime() - start) / 1_000_000 - allocated;
+            overrunMillis = Math.max(overrunMillis - overrunMillis / 4, overrun);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds to spend on the move in s with the given
+     * clock.
+     *
+     * The clock, less a reserve, is shared out over the moves we still expect to
+     * make (half the empty squares, plus a few to spare), and most of the
+     * increment is added. The middle game, where the search matters most, gets a
+     * quarter more than the opening and the positions the endgame solver takes
+     * over. Positions with many legal moves, which take longer to search to the
+     * same depth, get up to half more, and those with few down to half less. No
+     * move gets more than a quarter of what is left, and the reserve grows by
+     * what recent moves took longer than allocated, so the clock never runs out.
+     */
+    public long allocateMoveTime(GameState s, MoveClock clock) {
+        long remaining = clock.getRemainingMillis();
+        long usable = remaining - CLOCK_RESERVE_MS - remaining / CLOCK_RESERVE_DIVISOR - overrunMillis;
+        if (usable <= 0) {
+            return 0;
+        }
+        int squares = s.getSquareCount();
+        int empties = squares - s.countTokens(1) - s.countTokens(2);
+        int ourMoves = (empties + 1) / 2;
+        double time = (double) usable / (ourMoves + SPARE_MOVES) + 0.75 * clock.getIncrementMillis();
+
+        if (empties > endgameEmpties && empties < squares * 3 / 4) {
+            time *= 1.25;
+        }
+        int mobility = s.countLegalMoves(s.getPlayerInTurn());
+        time *= Math.max(0.5, Math.min(1.5, mobility / Math.sqrt(squares)));
+
+        return (long) Math.min(time, usable / 4.0);
+    }
 
     /**
      * Implements the decideMove function from the IOthelloAI.
@@ -37,25 +304,244 @@ public class OthelloAIDonathello implements IOthelloAI {
             System.out.println("==== Game start ====\nWe are player " + s.getPlayerInTurn() + " which is " + player);
             initial = true;
         }
-        var start = System.currentTimeMillis();
+        long start = System.nanoTime();
+        decision = new SearchStats();
 
         if (weightedBoard == null) {
             boardLength = s.getBoard().length;
             boardSize = boardLength * boardLength;
             boardSizeD = boardSize;
             weightedBoard = buildWeightedGameBoard(boardLength);
+            squareWeights = new double[boardSize];
+            for (int i = 0; i < boardLength; i++) {
+                for (int j = 0; j < boardLength; j++) {
+                    squareWeights[i * boardLength + j] = weightedBoard[i][j];
+                }
+            }
         }
 
         var legalMoves = s.legalMoves();
+        // toNanos saturates, so huge move times (as in SelfPlay) mean no deadline instead of overflowing
+        long moveNanos = TimeUnit.MILLISECONDS.toNanos(moveTimeMillis);
+        long deadline = start + moveNanos;
+        long pondered = ponderer.getNodes();
+        // In the solver's range a ponder result is only taken if it searched to the end of the game
+        int empties = s.getSquareCount() - s.countTokens(1) - s.countTokens(2);
+        boolean solvable = empties <= endgameEmpties;
+        if (ponderer.finish(s, legalMoves.size() == 1 || solvable ? start : deadline) && legalMoves.size() > 1
+                && (!solvable || ponderer.getCompletedDepth() >= empties)) {
+            var move = s.position(ponderer.getBestSquare());
+            decision.method = SearchStats.PONDER;
+            decision.depth = ponderer.getCompletedDepth();
+            decision.value = ponderer.getValue();
+            decision.nodes = ponderer.getNodes() - pondered;
+            decision.nanos = System.nanoTime() - start;
+            decision.principalVariation = principalVariation(new GameState(s), decision.depth, move);
+            listener.moveDecided(move, decision);
+            startPondering(s, move);
+            return move;
+        }
         if (legalMoves.size() == 1) {
             return legalMoves.get(0);
         }
 
-        var p = minimax(s, 6, true, -Double.MAX_VALUE, Double.MAX_VALUE);
-        var duration = System.currentTimeMillis() - start;
-        System.out.println("Utility for best move is " + p.val2);
-        System.out.println("Decision took " + duration + "ms");
-        return p.val1;
+        if (openingBook != null) {
+            var bookMove = openingBook.lookup(s);
+            if (bookMove != null) {
+                decision.method = SearchStats.BOOK;
+                decision.nanos = System.nanoTime() - start;
+                decision.principalVariation = List.of(bookMove);
+                listener.moveDecided(bookMove, decision);
+                return bookMove;
+            }
+        }
+
+        if (s.getPlayerInTurn() != player) {
+            // The stored utilities are from the view of the player searched for before
+            transpositionTable.clear();
+            player = s.getPlayerInTurn();
+        }
+        transpositionTable.newSearch();
+        search.newSearch();
+        var root = new GameState(s);
+        root.setSquareWeights(squareWeights);
+        if (usesPatterns(root)) {
+            root.setPatterns(patternEvaluator.getPatterns());
+        }
+        var move = solveEndgame(root, deadline);
+        if (move == null) {
+            var best = iterativeDeepening(root, deadline);
+            // null only if the thread was interrupted during the first iteration
+            move = best == null ? legalMoves.get(0) : best.val1;
+        }
+        decision.nanos = System.nanoTime() - start;
+        listener.moveDecided(move, decision);
+        if (SearchStats.SEARCH.equals(decision.method)) {
+            startPondering(s, move);
+        }
+        return move;
+    }
+
+    /**
+     * Starts pondering, if it is on, on the position after the given move and the
+     * reply predicted by the principal variation of the decision (or a pass if the
+     * opponent will have no moves). Positions the endgame solver will solve
+     * exactly are not pondered.
+     */
+    private void startPondering(GameState s, Position move) {
+        if (!pondering) {
+            return;
+        }
+        var next = new GameState(s);
+        next.setSquareWeights(squareWeights);
+        if (usesPatterns(next)) {
+            next.setPatterns(patternEvaluator.getPatterns());
+        }
+        next.makeMove(next.square(move));
+        int[] moves = new int[next.getSquareCount()];
+        if (next.legalMoves(moves) == 0) {
+            next.makePass();
+        } else if (decision.principalVariation.size() > 1) {
+            var reply = decision.principalVariation.get(1);
+            if (!next.insertToken(reply)) {
+                return;
+            }
+        } else {
+            return;
+        }
+        if (next.legalMoves(moves) == 0
+                || next.getSquareCount() - next.countTokens(1) - next.countTokens(2) <= endgameEmpties) {
+            return;
+        }
+        long moveNanos = TimeUnit.MILLISECONDS.toNanos(moveTimeMillis);
+        ponderer.start(next, maxDepth,
+                moveNanos > Long.MAX_VALUE / MAX_PONDER_MOVES ? Long.MAX_VALUE : MAX_PONDER_MOVES * moveNanos);
+    }
+
+    /**
+     * Solves s exactly if it has few enough empty squares (see setEndgameEmpties),
+     * using at most half the time until the deadline.
+     *
+     * @return the move with the best final disc difference, or null if s has too
+     *         many empty squares or could not be solved in time.
+     */
+    private Position solveEndgame(GameState s, long deadline) {
+        int empties = s.getSquareCount() - s.countTokens(1) - s.countTokens(2);
+        if (empties > endgameEmpties) {
+            return null;
+        }
+        SearchEvent event = SearchStats.JFR ? SearchEvent.begun() : null;
+        long start = System.nanoTime();
+        long nodesBefore = endgameSolver.getNodes();
+        endgameSolver.setDeadline(start + (deadline - start) / 2);
+        int value = endgameSolver.solve(s);
+        int bestSquare = endgameSolver.getBestSquare();
+        Position move = bestSquare < 0 ? new Position(-1, -1) : s.position(bestSquare);
+
+        SearchStats it = new SearchStats();
+        it.method = SearchStats.ENDGAME;
+        it.depth = empties;
+        it.nodes = endgameSolver.getNodes() - nodesBefore;
+        it.nanos = System.nanoTime() - start;
+        it.value = value;
+        it.aborted = endgameSolver.isAborted();
+        if (!it.aborted) {
+            it.principalVariation = List.of(move);
+        }
+        if (event != null) {
+            event.commit(it);
+        }
+        listener.iterationFinished(it);
+        decision.nodes += it.nodes;
+        if (it.aborted) {
+            return null;
+        }
+        decision.method = SearchStats.ENDGAME;
+        decision.depth = empties;
+        decision.value = value;
+        decision.principalVariation = it.principalVariation;
+        return move;
+    }
+
+    /**
+     * Runs minimax with depth 1, 2, 3, ... until the deadline is reached, the
+     * maximum depth is reached, or the search reaches the end of the game.
+     *
+     * The iteration running at the deadline is stopped and its result thrown
+     * away, so the result is that of the deepest completed iteration. The first
+     * iteration is always completed, unless the thread is interrupted, in which
+     * case null may be returned.
+     *
+     * Every iteration is reported to the search listener, and its statistics are
+     * added to those of the current decision (see getLastDecision).
+     *
+     * @param s        GameState
+     * @param deadline Value of System.nanoTime() at which to stop
+     * @return Pair of position (best move) and utility (as a double)
+     */
+    public Pair<Position, Double> iterativeDeepening(GameState s, long deadline) {
+        int[] tokens = s.countTokens();
+        int empties = s.getSquareCount() - tokens[0] - tokens[1];
+        int lastDepth = Math.max(1, Math.min(maxDepth, empties));
+
+        completedDepth = 0;
+        Pair<Position, Double> best = null;
+        long previousNodes = 0;
+        for (int depth = 1; depth <= lastDepth; depth++) {
+            SearchEvent event = SearchStats.JFR ? SearchEvent.begun() : null;
+            long start = System.nanoTime();
+            long nodesBefore = search.getNodes();
+            search.resetStats();
+            search.setDeadline(deadline, depth > 1);
+            var p = minimax(s, depth, true, -Double.MAX_VALUE, Double.MAX_VALUE);
+
+            SearchStats it = search.getStats();
+            it.depth = depth;
+            it.nodes = search.getNodes() - nodesBefore;
+            it.nanos = System.nanoTime() - start;
+            it.value = p.val2;
+            it.aborted = search.isAborted();
+            it.branchingFactor = previousNodes == 0 ? 0 : (double) it.nodes / previousNodes;
+            if (!it.aborted) {
+                it.principalVariation = principalVariation(s, depth, p.val1);
+            }
+            if (event != null) {
+                event.commit(it);
+            }
+            listener.iterationFinished(it);
+            decision.add(it);
+            decision.nodes += it.nodes;
+            previousNodes = it.nodes;
+            if (it.aborted) {
+                break;
+            }
+            best = p;
+            completedDepth = depth;
+            decision.method = SearchStats.SEARCH;
+            decision.depth = depth;
+            decision.value = p.val2;
+            decision.principalVariation = it.principalVariation;
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the principal variation of s stored in the transposition table, at
+     * most depth moves long, starting with the given best move.
+     */
+    private List<Position> principalVariation(GameState s, int depth, Position bestMove) {
+        List<Position> pv = new ArrayList<>();
+        for (int sq : search.principalVariation(s, depth)) {
+            pv.add(s.position(sq));
+        }
+        if (pv.isEmpty() || !pv.get(0).equals(bestMove)) {
+            // the entry of s was replaced by a deeper one of another position
+            pv = new ArrayList<>(List.of(bestMove));
+        }
+        return pv;
     }
 
     /**
@@ -65,6 +551,10 @@ public class OthelloAIDonathello implements IOthelloAI {
      * GameState. Otherwise use the minimax algorithm with alpha beta pruning for
      * finding best move. Recursively calls it self.
      *
+     * The search itself is done by an AlphaBetaSearch, which visits children by
+     * making each move on s and taking it back afterwards, so s is unchanged when
+     * the method returns.
+     *
      * @param s                GameState
      * @param depth            Desired depth to look at
      * @param maximizingPlayer Whether it is max's turn or min
@@ -73,62 +563,12 @@ public class OthelloAIDonathello implements IOthelloAI {
      * @return Pair of position (best move) and utility (as a double)
      */
     public Pair<Position, Double> minimax(GameState s, int depth, boolean maximizingPlayer, double alpha, double beta) {
-        int nLegalMoves = s.legalMoves().size();
-        if (depth == 0 || nLegalMoves == 0) {
-            return new Pair<>(new Position(-1, -1), getUtility(s));
-        }
-
-        Position bestMove = null;
-        double value = maximizingPlayer ? -Double.MAX_VALUE : Double.MAX_VALUE;
-
-        for (var possibleState : getChildGameStates(s)) {
-            var moveTaken = possibleState.val2;
-            var p = minimax(possibleState.val1, depth - 1, !maximizingPlayer, alpha, beta);
-            var bestValueFound = p.val2;
-            if (maximizingPlayer) {
-                if (bestValueFound > value) {
-                    value = bestValueFound;
-                    bestMove = moveTaken;
-                }
-
-                if (value >= beta) {
-                    break;
-                }
-
-                alpha = Math.max(alpha, value);
-
-            } else {
-                if (bestValueFound < value) {
-                    value = bestValueFound;
-                    bestMove = moveTaken;
-                }
-
-                if (value <= alpha) {
-                    break;
-                }
-
-                beta = Math.min(beta, value);
-            }
-        }
-
+        double value = search.search(s, depth, maximizingPlayer, alpha, beta);
+        int bestSquare = search.getBestSquare();
+        Position bestMove = bestSquare < 0 ? new Position(-1, -1) : s.position(bestSquare);
         return new Pair<>(bestMove, value);
     }
 
-    /**
-     * For all legal moves, create a GameState object after that move has been
-     * inserted.
-     *
-     * @param s GameState
-     * @return List of all GameStates from all LegalMoves.
-     */
-    public List<Pair<GameState, Position>> getChildGameStates(GameState s) {
-        return s.legalMoves().stream().map(move -> {
-            var gameState = new GameState(s.getBoard(), s.getPlayerInTurn());
-            gameState.insertToken(move);
-            return new Pair<>(gameState, move);
-        }).collect(Collectors.toList());
-    }
-
     public double getUtility(GameState s) {
         return heuristic(s);
     }
@@ -219,17 +659,42 @@ public class OthelloAIDonathello implements IOthelloAI {
     }
 
 
+    /**
+     * Returns the heatmap indexed by square (see GameState.square), or null
+     * before the first call to decideMove.
+     */
+    public double[] getSquareWeights() {
+        return squareWeights;
+    }
+
     public double getWeightedTile(int col, int row) {
         return weightedBoard[col][row];
     }
 
     /*
-     * Calculate position heuristic based on tile weights, as assigned in buildWeightedGameBoard
+     * Calculate position heuristic based on tile weights, as assigned in buildWeightedGameBoard,
+     * for the player we are searching for (not the player in turn at s, which depends on the
+     * depth of s in the search tree).
+     *
+     * The states searched by decideMove keep the weighted sums up to date themselves (see
+     * GameState.setSquareWeights), so for those this does not scan the board. WeightedTokensCheck
+     * checks that the sums equal those of countWeightedTokens.
      *
      */
     public double positionH(GameState s) {
-        double[] weightedTiles = countWeightedTokens(s);
-        return weightedTiles[s.getPlayerInTurn()-1];
+        if (s.getSquareWeights() != squareWeights) {
+            return countWeightedTokens(s)[player - 1];
+        }
+        return s.getWeightedTokens(player);
+    }
+
+    /**
+     * Returns whether positions like s are evaluated with the pattern weights:
+     * if there are weights, for boards of the size of s.
+     */
+    private boolean usesPatterns(GameState s) {
+        return patternEvaluator != null
+                && patternEvaluator.getSize() * patternEvaluator.getSize() == s.getSquareCount();
     }
 
     /**
@@ -238,10 +703,18 @@ public class OthelloAIDonathello implements IOthelloAI {
      * good positions, while the squares next to them are bad because we then allow
      * the opponent to place tiles on the good tiles.
      *
+     * If pattern weights are loaded for boards of this size, they are used
+     * instead: the estimated final disc difference for the player we are
+     * searching for, see PatternEvaluator.
+     *
      * @param s
      * @return returns the heuristic value of this GameState.
      */
     public double heuristic(GameState s) {
+        if (usesPatterns(s)) {
+            double value = patternEvaluator.evaluate(s);
+            return player == 1 ? value : -value;
+        }
         return positionH(s);
     }
 
@@ -2,14 +2,46 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * GUI to show the Othello game and to listen for input for the user/human player. When it is the user's turn, 
  * (s)he clicks on the place where (s)he wants to place a token, and when it is the computer's turn, the 
  * player needs to click anywhere in the frame to make the computer take it's turn. The user is made aware
  * of any illegal moves, or when (s)he - or the computer - have to pass because no legal moves are possible.  
+ *
+ * The AIs decide their moves on a background thread, so the window stays responsive while they think, and
+ * the board is only changed on the event dispatch thread. Clicks are ignored while an AI is thinking. An AI
+ * that takes longer than the move timeout (the system property othello.moveTimeoutMs, 10 seconds by default)
+ * is interrupted, the timeout is reported and counted, and its first legal move is played instead. The AI is
+ * not asked for another move until the interrupted call has returned. An AI that throws is reported in a
+ * dialog and its first legal move is played instead, too.
+ *
+ * If the system property othello.timeMs is set, the game is played with chess clocks: each player has that
+ * many milliseconds for the whole game, plus othello.incrementMs (0 by default) after every move. The clocks
+ * are shown in the title of the window, AIs are told their time through decideMove(GameState, MoveClock),
+ * and a player that runs out of time loses.
+ *
+ * The board is drawn into an image once, and after that only the squares changed by a move are drawn again,
+ * so repainting is cheap even on large boards.
+ *
+ * If the system property othello.record is set, the moves and result of the game are appended to the file it
+ * names (see GameRecord) when the game ends, or when the program exits before that.
  * @author Mai Ajspur
  * @version 9.2.2018
  */
@@ -17,12 +49,28 @@ public class OthelloGUI extends JComponent implements MouseListener
 {
     static final long 	serialVersionUID = 1234567890;
 	static final int 	imgSize = 100;
+	static final long	DEFAULT_MOVE_TIMEOUT_MS = 10000;
 	
 	private GameState state;		// The state of the game
     private int size;				// Number of rows and columns on the board
     private boolean humanPlayer;	// Whether a human player is playing or not
     private IOthelloAI ai1;			// The AI for player 1 if there are no human player
     private IOthelloAI ai2;			// The AI for player 2 
+    private long moveTimeoutMillis = Long.getLong("othello.moveTimeoutMs", DEFAULT_MOVE_TIMEOUT_MS);
+    private int[] timeouts = new int[3];	// Number of moves that timed out, per player
+    private boolean aiThinking;			// Whether an AI move is being decided; only used on the event dispatch thread
+    private final ExecutorService gameLoop = newDaemonExecutor("othello-game");	// Runs the AI turns, one at a time
+    private ExecutorService aiWorker = newDaemonExecutor("othello-ai");	// Runs decideMove, replaced when a move times out
+    private final Map<IOthelloAI, CountDownLatch> abandoned = new IdentityHashMap<>();	// Per AI: counted down when its timed out decideMove returns; only used on the game loop thread
+    private int failedPlayer;				// The first player whose AI threw, or 0
+    private GameClock clock;			// The clocks of the players, or null if the game is not timed
+    private int lostOnTime;				// The player whose time ran out, or 0
+    private Image boardImage;			// The board as shown, kept up to date move by move; created on the first paint
+    private int[] changedSquares;		// The squares changed by the last move, see GameState.lastMove
+    private Image result;				// The image shown once the game is over (who won), or null while it is not
+    private GameRecord record;			// The moves made, if the game is recorded and not yet saved, else null
+    private GameState recordedState;	// Copy of state after the last move recorded; record and this are guarded by this
+    private Path recordFile;			// The file the game is appended to, see othello.record
 
     // Images for drawing the game board
     private Image 		part, blackPion, whitePion, background;
@@ -62,6 +110,27 @@ public class OthelloGUI extends JComponent implements MouseListener
     		this.ai1 = ai1;
     	this.ai2=ai2;
     	this.addMouseListener(this);
+    	this.setDoubleBuffered(true);
+    	this.changedSquares = new int[size * size];
+    	long timeMillis = Long.getLong("othello.timeMs", 0);
+    	if ( timeMillis > 0 ){
+    		clock = new GameClock(timeMillis, Long.getLong("othello.incrementMs", 0));
+    		if ( humanPlayer )
+    			clock.start(1);
+    		new Timer(100, e -> tick()).start();
+    	}
+    	String recordName = System.getProperty("othello.record");
+    	if ( recordName != null ){
+    		if ( size > GameRecord.MAX_SIZE )
+    			System.err.println("Games on boards larger than " + GameRecord.MAX_SIZE + "x" + GameRecord.MAX_SIZE
+    				+ " are not recorded");
+    		else {
+    			record = new GameRecord(size, 1);
+    			recordedState = new GameState(state);
+    			recordFile = Paths.get(recordName);
+    			Runtime.getRuntime().addShutdownHook(new Thread(this::saveRecord, "othello-record"));
+    		}
+    	}
 		// playTurn();
 		
     }
@@ -70,110 +139,377 @@ public class OthelloGUI extends JComponent implements MouseListener
      * Draws the current game board and shows if someone won.
      */
     public void paint(Graphics g){
-		int[][] gameBoard = state.getBoard();
-    	this.setDoubleBuffered(true);
+    	if ( boardImage == null )
+    		boardImage = drawBoard();
     	Insets in = getInsets();               
     	g.translate(in.left, in.top);            
+    	g.drawImage(boardImage, 0, 0, this);
+    	if ( result != null )
+    		g.drawImage(result, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
+    }
 
-    	for (int c = 0; c < size; c++){
-    		for (int r = 0; r < size; r++){
-    			int player = gameBoard[c][r];
-    			if (player == 0) // background
-    				g.drawImage(background, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			else if (player == 2) // white = player2
-    				g.drawImage(whitePion, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			else // black = player1
-    				g.drawImage(blackPion, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			if (c == 0){
-    				g.drawImage(border_left, 0, imgSize+imgSize*r, this); 
-    				g.drawImage(border_right, size*imgSize+imgSize, imgSize+imgSize*r, this); 
-    			}
-    		}
-    		g.drawImage(border_top, imgSize+imgSize*c, 0, this);
-    		g.drawImage(border_bottom, imgSize+imgSize*c, size*imgSize+imgSize, this);
+    /**
+     * Draws the borders and all squares of the board into a new image, compatible with the screen if the
+     * component is shown on one.
+     */
+    private Image drawBoard(){
+    	int length = (size+2)*imgSize;
+    	GraphicsConfiguration config = getGraphicsConfiguration();
+    	BufferedImage image = config != null ? config.createCompatibleImage(length, length, Transparency.TRANSLUCENT)
+    										 : new BufferedImage(length, length, BufferedImage.TYPE_INT_ARGB);
+    	Graphics g = image.getGraphics();
+    	for (int i = 0; i < size; i++){
+    		g.drawImage(border_left, 0, imgSize+imgSize*i, this); 
+    		g.drawImage(border_right, size*imgSize+imgSize, imgSize+imgSize*i, this); 
+    		g.drawImage(border_top, imgSize+imgSize*i, 0, this);
+    		g.drawImage(border_bottom, imgSize+imgSize*i, size*imgSize+imgSize, this);
     	}
     	g.drawImage(corner_left_top, 0, 0, this);
     	g.drawImage(corner_left_bottom, 0, size*imgSize+imgSize, this);
     	g.drawImage(corner_right_top, imgSize+imgSize*size, 0, this);
     	g.drawImage(corner_right_bottom, imgSize+imgSize*size, size*imgSize+imgSize, this);
-		
-    	if ( state.isFinished() ){
+    	int[][] gameBoard = state.getBoard();
+    	for (int c = 0; c < size; c++)
+    		for (int r = 0; r < size; r++)
+    			drawSquare(g, c, r, gameBoard[c][r]);
+    	g.dispose();
+    	return image;
+    }
+
+    /**
+     * Draws the square (c, r) with a token of the given player, or empty if player is 0.
+     */
+    private void drawSquare(Graphics g, int c, int r, int player){
+    	g.drawImage(background, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    	if (player == 2) // white = player2
+    		g.drawImage(whitePion, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    	else if (player == 1) // black = player1
+    		g.drawImage(blackPion, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    	g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
+    }
+
+    /**
+     * Draws the squares changed by the last move into the board image and repaints just those squares.
+     */
+    private void drawLastMove(){
+    	int n = state.lastMove(changedSquares);
+    	if ( n == 0 || boardImage == null )
+    		return;
+    	int player = state.getBoard()[changedSquares[0] / size][changedSquares[0] % size];
+    	Graphics g = boardImage.getGraphics();
+    	Insets in = getInsets();
+    	for (int i = 0; i < n; i++){
+    		int c = changedSquares[i] / size;
+    		int r = changedSquares[i] % size;
+    		drawSquare(g, c, r, player);
+    		repaint(in.left+imgSize+imgSize*c, in.top+imgSize+imgSize*r, imgSize, imgSize);
+    	}
+    	g.dispose();
+    }
+
+    /**
+     * Finds out if the game is over, and if so, who won, after a move or a player running out of time.
+     */
+    private void updateResult(){
+    	Image before = result;
+    	if ( lostOnTime != 0 )
+    		result = lostOnTime == 1 ? whiteWon : blackWon;
+    	else if ( state.isFinished() ){
     		int[] tokens = state.countTokens();
     		if ( tokens[0] > tokens[1] )
-    			g.drawImage(blackWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
+    			result = blackWon;
     		else if ( tokens[0] < tokens[1] )
-    			g.drawImage(whiteWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
+    			result = whiteWon;
     		else
-    			g.drawImage(tie, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    	}		
+    			result = tie;
+    	}
+    	if ( result != before ){
+    		saveRecord();
+    		repaint();
+    	}
     }
 
-    public void mouseClicked(MouseEvent e){
-    	int currentPlayer = state.getPlayerInTurn();
-    	if ( !state.isFinished() ){
-    		Position place = getPlaceForNextToken(e);
-    		if ( state.insertToken(place) ){ // Chosen move is legal
-				boolean nextPlayerCannotMove = state.legalMoves().isEmpty();
-   				if ( nextPlayerCannotMove ){ // The next player cannot move
-					repaint();
-   					state.changePlayer();
-   					if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
-   	  					boolean canMoveAfterwards = !state.legalMoves().isEmpty();
-   	   					if ( canMoveAfterwards ){
-   	   						String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again." 
-   	   													 	    : "You have no legal moves. Your opponent will make another move (click again).";
-   	   						JOptionPane.showMessageDialog(this, message);
-   	   					}  						
-   					}
-   				}
- 			}
-   			else 
-   				illegalMoveAttempted(place); 		
-    		repaint();
+    /**
+     * Adds a move (a square, or GameState.PASS) to the record of the game, if it is recorded, and copies the
+     * state after it, so saveRecord never reads the state while the event dispatch thread changes it.
+     */
+    private synchronized void recordMove(int sq){
+    	if ( record != null ){
+    		record.addMove(sq);
+    		recordedState = new GameState(state);
     	}
     }
 
+    /**
+     * Appends the record of the game to the record file, once: when the game is over, or when the program
+     * exits before that, as an unfinished game. Only reads the copy of the state made by recordMove, as it
+     * may be called by the shutdown hook.
+     */
+    private synchronized void saveRecord(){
+    	if ( record == null )
+    		return;
+    	int winner = 0;
+    	int end = GameRecord.UNFINISHED;
+    	if ( lostOnTime != 0 ){
+    		winner = 3 - lostOnTime;
+    		end = GameRecord.TIME;
+    	}
+    	else if ( recordedState.isFinished() ){
+    		int[] tokens = recordedState.countTokens();
+    		winner = tokens[0] > tokens[1] ? 1 : tokens[0] < tokens[1] ? 2 : 0;
+    		end = failedPlayer != 0 ? GameRecord.ERROR : GameRecord.FINISHED;
+    	}
+    	record.finish(recordedState, winner, end);
+    	try (GameRecord.Writer writer = new GameRecord.Writer(recordFile)){
+    		writer.write(record);
+    	} catch (IOException ex) {
+    		System.err.println("Could not record the game in " + recordFile + ": " + ex.getMessage());
+    	}
+    	record = null;
+    }
+
+    public void mouseClicked(MouseEvent e){
+    	if ( aiThinking || isGameOver() )
+    		return;
+    	if ( humanPlayer && state.getPlayerInTurn() == 1 )
+    		makeMove(humanSelectedPlace(e));
+    	else
+    		playAITurns(false);
+    }
+
+	/**
+	 * Lets the AIs play until the game is finished or it is the turn of the human player.
+	 */
 	public void playTurn(){
+		if ( !aiThinking && !isGameOver() )
+			playAITurns(true);
+	}
+
+	/**
+	 * Plays the turn of the AI in turn on the game loop thread, and if untilHuman is true keeps doing so
+	 * until the game is finished or it is the turn of the human player. Must be called on the event dispatch
+	 * thread.
+	 */
+	private void playAITurns(boolean untilHuman){
+		aiThinking = true;
+		GameState first = new GameState(state);
+		gameLoop.execute(() -> {
+			GameState next = first;
+			try {
+				while ( next != null ){
+					Position place = decideMoveWithTimeout(next);
+					GameState[] after = new GameState[1];
+					SwingUtilities.invokeAndWait(() -> {
+						boolean more = makeMove(place) && untilHuman && !isGameOver()
+							&& !(humanPlayer && state.getPlayerInTurn() == 1);
+						after[0] = more ? new GameState(state) : null;
+					});
+					next = after[0];
+				}
+			} catch (InvocationTargetException ex) {
+				reportError("The game stopped because of an error: " + ex.getCause());
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				SwingUtilities.invokeLater(() -> aiThinking = false);
+			}
+		});
+	}
+
+	/**
+	 * Asks the AI in turn at s for its move on the AI worker thread, and waits at most the move timeout for
+	 * it, or until its clock runs out. If the AI takes longer it is interrupted, the timeout is recorded, and
+	 * the first legal move is returned instead (which loses the game if the clock ran out). The same is done
+	 * without asking the AI if an earlier call that timed out has still not returned within that time. If the
+	 * AI throws, the error is reported and the first legal move is returned. Called on the game loop thread.
+	 */
+	private Position decideMoveWithTimeout(GameState s) throws InterruptedException {
+		int player = s.getPlayerInTurn();
+		IOthelloAI ai = player == 2 ? ai2 : ai1;
+		String name = "The AI for player " + player + (player == 1 ? " (black)" : " (white)");
+		ArrayList<Position> legalMoves = s.legalMoves();
+		Position fallback = legalMoves.isEmpty() ? new Position(-1, -1) : legalMoves.get(0);
+		long limit = moveTimeoutMillis;
+		MoveClock moveClock = null;
+		if ( clock != null ){
+			clock.start(player);
+			moveClock = clock.moveClock(player);
+			limit = Math.min(limit, moveClock.getRemainingMillis() + 1);
+		}
+		// The AI is not safe to use from two threads, so it only gets a new position once it is done with the last
+		CountDownLatch previous = abandoned.get(ai);
+		if ( previous != null ){
+			if ( !previous.await(limit, TimeUnit.MILLISECONDS) )
+				return timedOut(player, name + " was still deciding an earlier move", fallback);
+			abandoned.remove(ai);
+		}
+		MoveClock playerClock = moveClock;
+		CountDownLatch returned = new CountDownLatch(1);
+		Future<Position> decision = aiWorker.submit(() -> {
+			try {
+				return playerClock == null ? ai.decideMove(s) : ai.decideMove(s, playerClock);
+			} finally {
+				returned.countDown();
+			}
+		});
+		try {
+			return decision.get(limit, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException ex) {
+			decision.cancel(true);
+			// The AI may not stop at once, so its thread is left to finish on its own
+			aiWorker.shutdownNow();
+			aiWorker = newDaemonExecutor("othello-ai");
+			abandoned.put(ai, returned);
+			return timedOut(player, name + " did not decide within " + moveTimeoutMillis + "ms", fallback);
+		} catch (ExecutionException ex) {
+			synchronized (this){
+				if ( failedPlayer == 0 )
+					failedPlayer = player;
+			}
+			reportError(name + " failed with " + ex.getCause() + ", so " + fallback + " is played instead.");
+			return fallback;
+		}
+	}
+
+	/**
+	 * Counts and reports a move of the given player that timed out, unless its clock ran out, and returns the
+	 * fallback move.
+	 */
+	private Position timedOut(int player, String message, Position fallback){
+		if ( clock != null && clock.isOutOfTime(player) ){
+			System.err.println("The AI for player " + player + (player == 1 ? " (black)" : " (white)")
+				+ " ran out of time");
+			return fallback;
+		}
+		timeouts[player]++;
+		System.err.println(message + " (timeout " + timeouts[player] + "), playing " + fallback + " instead");
+		return fallback;
+	}
+
+	/**
+	 * Shows the given error in a dialog. May be called on any thread.
+	 */
+	private void reportError(String message){
+		SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, "Error",
+			JOptionPane.ERROR_MESSAGE));
+	}
+
+	/**
+	 * Makes the given move for the player in turn if it is legal and the player has time left, tells the
+	 * players if the next player has to pass, and repaints. Returns whether the move was made. Must be called
+	 * on the event dispatch thread.
+	 */
+	private boolean makeMove(Position place){
 		int currentPlayer = state.getPlayerInTurn();
-    	if ( !state.isFinished() ){
-    		Position place = getPlaceForNextToken(null);
-    		if ( state.insertToken(place) ){ // Chosen move is legal
-				boolean nextPlayerCannotMove = state.legalMoves().isEmpty();
-   				if ( nextPlayerCannotMove ){ // The next player cannot move
-					repaint();
-   					state.changePlayer();
-   					if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
-   	  					boolean canMoveAfterwards = !state.legalMoves().isEmpty();
-   	   					if ( canMoveAfterwards ){
-   	   						String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again." 
-   	   													 	    : "You have no legal moves. Your opponent will make another move (click again).";
-   	   						JOptionPane.showMessageDialog(this, message);
-   	   					}  						
-   					}
-   				}
- 			}
-   			else 
-   				illegalMoveAttempted(place); 		
-    		repaint();
-			playTurn();
-    	}
+		if ( lostOnTime != 0 )
+			return false;
+		if ( clock != null && clock.isOutOfTime(currentPlayer) ){
+			loseOnTime(currentPlayer);
+			return false;
+		}
+		boolean legal = place != null && state.insertToken(place);
+		if ( legal ){ // Chosen move is legal
+			recordMove(state.square(place));
+			if ( clock != null )
+				clock.stop();
+			drawLastMove();
+			boolean nextPlayerCannotMove = state.countLegalMoves(state.getPlayerInTurn()) == 0;
+			if ( nextPlayerCannotMove ){ // The next player cannot move
+				state.changePlayer();
+				if ( !state.isFinished() )
+					recordMove(GameState.PASS);
+				if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
+					boolean canMoveAfterwards = state.countLegalMoves(state.getPlayerInTurn()) > 0;
+					if ( canMoveAfterwards ){
+						String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again." 
+													 	    : "You have no legal moves. Your opponent will make another move (click again).";
+						JOptionPane.showMessageDialog(this, message);
+					}  						
+				}
+			}
+		}
+		else 
+			illegalMoveAttempted(place); 		
+		if ( clock != null ){
+			if ( humanPlayer && state.getPlayerInTurn() == 1 && !state.isFinished() )
+				clock.start(1);
+			showClocks();
+		}
+		updateResult();
+		return legal;
 	}
-    
-    /**
-     * Get a position to place the next token (i.e. read mouse click if human
-     * player is in turn, otherwise ask corresponding AI)
-     */
-    private Position getPlaceForNextToken(MouseEvent e){
-    	if ( state.getPlayerInTurn() == 2 ) 
-			return ai2.decideMove(state);
-		else {
-			if ( humanPlayer )
-				return humanSelectedPlace(e);
-			else
-				return ai1.decideMove(state);
+
+	/**
+	 * Whether the game has ended, because the board is finished or a player ran out of time.
+	 */
+	private boolean isGameOver(){
+		return result != null;
+	}
+
+	/**
+	 * Ends the game because the given player ran out of time. Must be called on the event dispatch thread.
+	 */
+	private void loseOnTime(int player){
+		clock.stop();
+		synchronized (this){
+			lostOnTime = player;
 		}
-    }
+		showClocks();
+		updateResult();
+	}
+
+	/**
+	 * Shows the clocks, and ends the game if the player in turn has run out of time. Called on the event
+	 * dispatch thread by a timer when the game is timed.
+	 */
+	private void tick(){
+		if ( isGameOver() )
+			return;
+		if ( clock.isOutOfTime(state.getPlayerInTurn()) )
+			loseOnTime(state.getPlayerInTurn());
+		else
+			showClocks();
+	}
+
+	/**
+	 * Shows the time left of both players in the title of the window.
+	 */
+	private void showClocks(){
+		Window window = SwingUtilities.getWindowAncestor(this);
+		if ( window instanceof Frame )
+			((Frame) window).setTitle("Othello - black " + GameClock.format(clock.getRemainingMillis(1))
+				+ (lostOnTime == 1 ? " (lost on time)" : "") + " - white " + GameClock.format(clock.getRemainingMillis(2))
+				+ (lostOnTime == 2 ? " (lost on time)" : ""));
+	}
+
+	/**
+	 * Sets how long an AI may take to decide a move before it is interrupted.
+	 */
+	public void setMoveTimeout(long millis){
+		moveTimeoutMillis = millis;
+	}
+
+	/**
+	 * Returns the player (1 or 2) that lost because its clock ran out, or 0.
+	 */
+	public int getLostOnTime(){
+		return lostOnTime;
+	}
+
+	/**
+	 * Returns the number of moves of the given player (1 or 2) that timed out.
+	 */
+	public int getTimeouts(int player){
+		return timeouts[player];
+	}
+
+	private static ExecutorService newDaemonExecutor(String name){
+		return Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
 
     /**
      * Display message for when an illegal move has been attempted 
@@ -0,0 +1,87 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Compares the parallel search of OthelloAIDonathello with the serial search.
+ *
+ * Every position of a fixed corpus is searched to the same depth with one
+ * thread and with each of the given thread counts, using a fresh AI each time.
+ * For each thread count the report shows the total time to reach the depth,
+ * the nodes searched, nodes per second, and the speedup over one thread in
+ * both time to depth and nodes per second.
+ *
+ * Usage: java ParallelSpeedup [depth] [positions] [size] [threads...]
+ * Defaults: depth 8, 20 positions, 8x8, and 2, 4, ... up to the number of cores.
+ */
+public class ParallelSpeedup {
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int[] threads;
+        if (args.length > 3) {
+            threads = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                threads[i - 3] = Integer.parseInt(args[i]);
+            }
+        } else {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int n = 1;
+            while ((1 << n) <= cores) {
+                n++;
+            }
+            threads = new int[n - 1];
+            for (int i = 1; i < n; i++) {
+                threads[i - 1] = 1 << i;
+            }
+        }
+
+        List<GameState> positions = PositionCorpus.midgame(size, count, 2018);
+        System.out.println("Searching " + count + " positions of size " + size + " to depth " + depth);
+        System.out.println("threads      ms       nodes    knps  speedup(time)  speedup(nps)");
+
+        long[] serial = run(positions, depth, 1);
+        print(1, serial, serial);
+        for (int t : threads) {
+            if (t > 1) {
+                print(t, run(positions, depth, t), serial);
+            }
+        }
+    }
+
+    /**
+     * Returns the total time in nanoseconds and the total number of nodes.
+     */
+    private static long[] run(List<GameState> positions, int depth, int threads) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long time = 0;
+        long nodes = 0;
+        try {
+            for (GameState s : positions) {
+                OthelloAIDonathello ai = new OthelloAIDonathello();
+                ai.setThreads(threads);
+                ai.setMaxDepth(depth);
+                ai.setMoveTime(Long.MAX_VALUE / 4_000_000);
+                long start = System.nanoTime();
+                ai.decideMove(s);
+                time += System.nanoTime() - start;
+                nodes += ai.getNodes();
+                ai.setThreads(1);
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return new long[] {time, nodes};
+    }
+
+    private static void print(int threads, long[] result, long[] serial) {
+        double ms = result[0] / 1e6;
+        double knps = result[1] / (result[0] / 1e9) / 1000;
+        double serialKnps = serial[1] / (serial[0] / 1e9) / 1000;
+        System.out.printf("%7d %7.0f %11d %7.0f %14.2f %13.2f%n", threads, ms, result[1], knps,
+                (double) serial[0] / result[0], knps / serialKnps);
+    }
+}
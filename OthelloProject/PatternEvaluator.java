@@ -0,0 +1,199 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Evaluates positions by looking up the configuration of every instance of the
+ * patterns of a {@link PatternSet} in a table of weights, one table per pattern
+ * and game phase, and adding them up, together with a weight for the side to
+ * move. The value is an estimate of the final disc difference for black.
+ *
+ * The game is split into phases by the number of discs on the board, so each
+ * phase has its own weights: a corner is worth more near the end of the game
+ * than in the opening. States that keep their pattern indices up to date (see
+ * GameState.setPatterns) are evaluated with one table lookup per instance.
+ *
+ * Weights are stored in a file with a 32 byte header (magic number, version,
+ * board size, phases, patterns, scale and two unused ints), then for each phase
+ * the side to move weight and the tables of all patterns, every weight a short
+ * counting 1/scale discs. With 8 phases that is 2.4 MB.
+ * WeightFitter fits the weights to positions played by SelfPlay.
+ */
+public final class PatternEvaluator {
+
+    private static final int MAGIC = 0x5054_4E31; // "PTN1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    /** Weights in the file count 1/SCALE discs. */
+    private static final int SCALE = 256;
+
+    private final int size;
+    private final PatternSet patterns;
+    private final int phases;
+    // Per phase: the weights of all patterns one after the other, starting at offset[pattern]
+    private final float[][] weights;
+    private final float[] sideToMove;
+    private final int[] offset;
+    // offset[pattern(instance)] per instance, so a lookup needs no indirection through the pattern
+    private final int[] instanceOffset;
+
+    /**
+     * Creates an evaluator with all weights 0 for boards of the given size (at
+     * least PatternSet.MIN_SIZE), with the given number of game phases.
+     */
+    public PatternEvaluator(int size, int phases) {
+        this.size = size;
+        this.patterns = PatternSet.forSize(size);
+        this.phases = phases;
+        offset = new int[PatternSet.count() + 1];
+        for (int p = 0; p < PatternSet.count(); p++) {
+            offset[p + 1] = offset[p] + PatternSet.configurations(p);
+        }
+        weights = new float[phases][offset[PatternSet.count()]];
+        sideToMove = new float[phases];
+        instanceOffset = new int[patterns.instances()];
+        for (int i = 0; i < instanceOffset.length; i++) {
+            instanceOffset[i] = offset[patterns.pattern(i)];
+        }
+    }
+
+    /**
+     * Reads the weights in the given file.
+     *
+     * @throws IOException if the file cannot be read or is not a weight file.
+     */
+    public static PatternEvaluator load(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.limit() < HEADER_BYTES || in.getInt(0) != MAGIC || in.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a pattern weight file");
+        }
+        int size = in.getInt(8);
+        int phases = in.getInt(12);
+        int count = in.getInt(16);
+        int scale = in.getInt(20);
+        if (count != PatternSet.count() || size < PatternSet.MIN_SIZE || phases < 1 || scale < 1) {
+            throw new IOException(file + " has weights for other patterns");
+        }
+        PatternEvaluator evaluator = new PatternEvaluator(size, phases);
+        int perPhase = 1 + evaluator.offset[count];
+        if (in.limit() != HEADER_BYTES + 2L * phases * perPhase) {
+            throw new IOException(file + " is truncated");
+        }
+        in.position(HEADER_BYTES);
+        for (int phase = 0; phase < phases; phase++) {
+            evaluator.sideToMove[phase] = (float) in.getShort() / scale;
+            float[] table = evaluator.weights[phase];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (float) in.getShort() / scale;
+            }
+        }
+        return evaluator;
+    }
+
+    /**
+     * Writes the weights to the given file, rounded to 1/256 disc.
+     */
+    public void write(Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(phases);
+            out.writeInt(PatternSet.count());
+            out.writeInt(SCALE);
+            out.writeInt(0);
+            out.writeInt(0);
+            for (int phase = 0; phase < phases; phase++) {
+                out.writeShort(quantize(sideToMove[phase]));
+                for (float w : weights[phase]) {
+                    out.writeShort(quantize(w));
+                }
+            }
+        }
+    }
+
+    private static short quantize(float weight) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(weight * SCALE)));
+    }
+
+    /**
+     * Returns the number of columns (and rows) of the boards these weights are for.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public PatternSet getPatterns() {
+        return patterns;
+    }
+
+    public int getPhases() {
+        return phases;
+    }
+
+    /**
+     * Returns the phase of a position with the given number of discs.
+     */
+    public int phase(int discs) {
+        int squares = size * size;
+        return Math.min(phases - 1, Math.max(0, (discs - 4) * phases / (squares - 3)));
+    }
+
+    /**
+     * Returns the index of the weight of the given configuration of the given
+     * pattern within the table of a phase (see getWeights).
+     */
+    public int weightIndex(int pattern, int configuration) {
+        return offset[pattern] + configuration;
+    }
+
+    /**
+     * Returns the table of weights of the given phase, indexed by weightIndex.
+     * Changes to the array change the evaluator.
+     */
+    public float[] getWeights(int phase) {
+        return weights[phase];
+    }
+
+    /**
+     * Returns the weights of black being the side to move, per phase. Changes to
+     * the array change the evaluator.
+     */
+    public float[] getSideToMoveWeights() {
+        return sideToMove;
+    }
+
+    /**
+     * Returns the estimated final disc difference of s for black (negative if
+     * white is ahead). s must be on a board of this evaluator's size.
+     */
+    public double evaluate(GameState s) {
+        int[] indices = s.getPatterns() == patterns ? s.getPatternIndices() : indices(s);
+        int phase = phase(s.countTokens(1) + s.countTokens(2));
+        float[] table = weights[phase];
+        double value = s.getPlayerInTurn() == 1 ? sideToMove[phase] : -sideToMove[phase];
+        for (int i = 0; i < indices.length; i++) {
+            value += table[instanceOffset[i] + indices[i]];
+        }
+        return value;
+    }
+
+    /**
+     * Computes the pattern indices of s from its discs.
+     */
+    public int[] indices(GameState s) {
+        int words = BitboardN.forSize(size).words;
+        long[] black = new long[words];
+        long[] white = new long[words];
+        s.copyDiscs(1, black);
+        s.copyDiscs(2, white);
+        int[] indices = new int[patterns.instances()];
+        patterns.indices(black, white, indices);
+        return indices;
+    }
+}
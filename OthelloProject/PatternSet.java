@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The patterns of squares read by PatternEvaluator on boards of one size.
+ *
+ * A pattern is a shape near a corner: the edge with the two X squares next to
+ * it, the 3x3 and 2x5 corner regions, and the diagonals of length 4 to 8. Its
+ * instances are the shape moved by each of the 8 symmetries of the board (see
+ * {@link Symmetry}), leaving out images that cover the same squares as an
+ * earlier one. All instances of a pattern share its weights.
+ *
+ * The configuration of an instance is a number in base 3 with one digit per
+ * square, in the order of the shape: 0 for an empty square, 1 for black and 2
+ * for white. The first square is the lowest digit. GameState keeps the index of
+ * every instance up to date as moves are made (see GameState.setPatterns), using
+ * the instances and powers of 3 per square given here.
+ *
+ * The shapes fit on boards of at least {@link #MIN_SIZE} columns. On larger
+ * boards the edges and diagonals are the parts of them nearest the corners.
+ */
+public final class PatternSet {
+
+    /** Smallest board the patterns fit on. */
+    public static final int MIN_SIZE = 8;
+
+    /** Names of the patterns, in the order of their weights. */
+    public static final String[] NAMES = {
+        "edge+2x", "corner3x3", "corner2x5", "diagonal8", "diagonal7", "diagonal6", "diagonal5", "diagonal4",
+    };
+
+    // Squares (col, row) of each pattern near the corner (0, 0)
+    private static final int[][][] SHAPES = {
+        {{0, 0}, {0, 1}, {0, 2}, {0, 3}, {0, 4}, {0, 5}, {0, 6}, {0, 7}, {1, 1}, {1, 6}},
+        {{0, 0}, {0, 1}, {0, 2}, {1, 0}, {1, 1}, {1, 2}, {2, 0}, {2, 1}, {2, 2}},
+        {{0, 0}, {0, 1}, {0, 2}, {0, 3}, {0, 4}, {1, 0}, {1, 1}, {1, 2}, {1, 3}, {1, 4}},
+        diagonal(0, 8),
+        diagonal(1, 7),
+        diagonal(2, 6),
+        diagonal(3, 5),
+        diagonal(4, 4),
+    };
+
+    private static final ConcurrentHashMap<Integer, PatternSet> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Number of columns (and rows) of the boards. */
+    public final int size;
+
+    // Pattern and squares of every instance
+    final int[] instancePattern;
+    final int[][] instanceSquares;
+    // For every square: the instances it is part of, and 3 to the power of its place in each
+    final int[][] squareInstances;
+    final int[][] squarePowers;
+
+    private PatternSet(int size) {
+        if (size < MIN_SIZE) {
+            throw new IllegalArgumentException("Patterns need a board of at least " + MIN_SIZE + "x" + MIN_SIZE);
+        }
+        this.size = size;
+        Symmetry symmetry = Symmetry.forSize(size);
+        List<int[]> squares = new ArrayList<>();
+        List<Integer> patterns = new ArrayList<>();
+        for (int p = 0; p < SHAPES.length; p++) {
+            Set<List<Integer>> covered = new HashSet<>();
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                int[] instance = new int[SHAPES[p].length];
+                for (int i = 0; i < instance.length; i++) {
+                    instance[i] = symmetry.transform(t, SHAPES[p][i][0] * size + SHAPES[p][i][1]);
+                }
+                int[] sorted = instance.clone();
+                Arrays.sort(sorted);
+                if (covered.add(Arrays.stream(sorted).boxed().toList())) {
+                    squares.add(instance);
+                    patterns.add(p);
+                }
+            }
+        }
+        instanceSquares = squares.toArray(new int[0][]);
+        instancePattern = patterns.stream().mapToInt(Integer::intValue).toArray();
+
+        int[] count = new int[size * size];
+        for (int[] instance : instanceSquares) {
+            for (int sq : instance) {
+                count[sq]++;
+            }
+        }
+        squareInstances = new int[size * size][];
+        squarePowers = new int[size * size][];
+        for (int sq = 0; sq < count.length; sq++) {
+            squareInstances[sq] = new int[count[sq]];
+            squarePowers[sq] = new int[count[sq]];
+            count[sq] = 0;
+        }
+        for (int i = 0; i < instanceSquares.length; i++) {
+            int power = 1;
+            for (int sq : instanceSquares[i]) {
+                squareInstances[sq][count[sq]] = i;
+                squarePowers[sq][count[sq]++] = power;
+                power *= 3;
+            }
+        }
+    }
+
+    private static int[][] diagonal(int offset, int length) {
+        int[][] squares = new int[length][];
+        for (int i = 0; i < length; i++) {
+            squares[i] = new int[] {i + offset, i};
+        }
+        return squares;
+    }
+
+    /**
+     * Returns the (shared) patterns of boards with the given number of columns and rows.
+     *
+     * @throws IllegalArgumentException if the board is smaller than MIN_SIZE.
+     */
+    public static PatternSet forSize(int size) {
+        return INSTANCES.computeIfAbsent(size, PatternSet::new);
+    }
+
+    /**
+     * Returns the number of patterns, which is the same for all sizes.
+     */
+    public static int count() {
+        return SHAPES.length;
+    }
+
+    /**
+     * Returns the number of squares of the given pattern.
+     */
+    public static int length(int pattern) {
+        return SHAPES[pattern].length;
+    }
+
+    /**
+     * Returns the number of configurations of the given pattern, 3 to the power of its length.
+     */
+    public static int configurations(int pattern) {
+        int n = 1;
+        for (int i = 0; i < SHAPES[pattern].length; i++) {
+            n *= 3;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of instances of the patterns on this board.
+     */
+    public int instances() {
+        return instanceSquares.length;
+    }
+
+    /**
+     * Returns the pattern the given instance is an instance of.
+     */
+    public int pattern(int instance) {
+        return instancePattern[instance];
+    }
+
+    /**
+     * Writes the index of every instance for the given discs (indexed as in
+     * GameState.square) into indices.
+     */
+    public void indices(long[] black, long[] white, int[] indices) {
+        for (int i = 0; i < instanceSquares.length; i++) {
+            int[] instance = instanceSquares[i];
+            int index = 0;
+            for (int k = instance.length - 1; k >= 0; k--) {
+                int sq = instance[k];
+                index = 3 * index + (BitboardN.get(black, sq) ? 1 : BitboardN.get(white, sq) ? 2 : 0);
+            }
+            indices[i] = index;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+import java.util.SplittableRandom;
+
+/**
+ * A bare board for playing moves as fast as possible, such as the random games
+ * played out by MctsAI.
+ *
+ * Only the discs of both players (as bitsets indexed as in GameState.square) and
+ * the player in turn are kept: there is no history, hash or board array, and
+ * moves are not checked. All buffers are allocated by the constructor, so
+ * setting a position and playing a game to the end allocates nothing. On 8x8
+ * boards the 64-bit routines of {@link Bitboard} are used.
+ *
+ * A board is not safe to use from several threads; give every thread its own.
+ */
+public final class PlayoutBoard {
+
+    private final int size;
+    private final BitboardN geometry;
+    private final long[] black;
+    private final long[] white;
+    private int player;
+    private int plies;
+    // Scratch space for move generation and the squares turned by a move
+    private final long[] moves;
+    private final long[] scratch;
+    private final int[] turned;
+    private final int[] empties;
+
+    /**
+     * Creates an empty board with the given number of columns and rows.
+     */
+    public PlayoutBoard(int size) {
+        this.size = size;
+        geometry = BitboardN.forSize(size);
+        black = new long[geometry.words];
+        white = new long[geometry.words];
+        moves = new long[geometry.words];
+        scratch = new long[geometry.scratchLength()];
+        turned = new int[geometry.maxFlips()];
+        empties = new int[geometry.squares];
+        player = 1;
+    }
+
+    /**
+     * Copies the discs and the player in turn of s, which must be on a board of
+     * this size.
+     */
+    public void set(GameState s) {
+        s.copyDiscs(1, black);
+        s.copyDiscs(2, white);
+        player = s.getPlayerInTurn();
+        plies = 0;
+    }
+
+    /**
+     * Copies the discs and the player in turn of another board of the same size.
+     */
+    public void set(PlayoutBoard other) {
+        System.arraycopy(other.black, 0, black, 0, black.length);
+        System.arraycopy(other.white, 0, white, 0, white.length);
+        player = other.player;
+        plies = 0;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getPlayerInTurn() {
+        return player;
+    }
+
+    /**
+     * Returns the number of moves (not counting passes) played since the position
+     * was set.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Returns whether the discs and the player in turn are those of s.
+     */
+    public boolean matches(GameState s) {
+        long[] discs = scratch;
+        s.copyDiscs(1, discs);
+        for (int w = 0; w < black.length; w++) {
+            if (discs[w] != black[w]) {
+                return false;
+            }
+        }
+        s.copyDiscs(2, discs);
+        for (int w = 0; w < white.length; w++) {
+            if (discs[w] != white[w]) {
+                return false;
+            }
+        }
+        return player == s.getPlayerInTurn();
+    }
+
+    /**
+     * Returns the number of black discs minus the number of white discs.
+     */
+    public int discDifference() {
+        return BitboardN.count(black) - BitboardN.count(white);
+    }
+
+    /**
+     * Writes the squares of the legal moves of the player in turn into the given
+     * array, in increasing order, and returns how many there are.
+     */
+    public int legalMoves(int[] squares) {
+        generateMoves(player);
+        int n = 0;
+        for (int w = 0; w < moves.length; w++) {
+            for (long m = moves[w]; m != 0; m &= m - 1) {
+                squares[n++] = w * 64 + Long.numberOfTrailingZeros(m);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns whether the given player has a legal move.
+     */
+    public boolean hasLegalMoves(int player) {
+        return generateMoves(player) > 0;
+    }
+
+    /**
+     * Puts a disc of the player in turn on the given square, which must be a legal
+     * move, or passes if the square is GameState.PASS, and gives the turn to the
+     * other player.
+     */
+    public void play(int sq) {
+        if (sq != GameState.PASS) {
+            long[] own = player == 1 ? black : white;
+            long[] opp = player == 1 ? white : black;
+            if (size == Bitboard.SIZE) {
+                long flips = Bitboard.flips(own[0], opp[0], sq);
+                own[0] |= flips | (1L << sq);
+                opp[0] &= ~flips;
+            } else {
+                int n = geometry.flips(own, opp, sq, turned, 0);
+                for (int i = 0; i < n; i++) {
+                    BitboardN.set(own, turned[i]);
+                    BitboardN.clear(opp, turned[i]);
+                }
+                BitboardN.set(own, sq);
+            }
+            plies++;
+        }
+        player = 3 - player;
+    }
+
+    /**
+     * Plays uniformly random legal moves, passing when there is none, until
+     * neither player can move, and returns the final disc difference for black.
+     */
+    public int playRandom(SplittableRandom random) {
+        if (size != Bitboard.SIZE) {
+            return playRandomLarge(random);
+        }
+        boolean passed = false;
+        while (true) {
+            int n = generateMoves(player);
+            if (n == 0) {
+                if (passed) {
+                    break;
+                }
+                passed = true;
+                player = 3 - player;
+                continue;
+            }
+            passed = false;
+            play(select(random.nextInt(n)));
+        }
+        return discDifference();
+    }
+
+    /**
+     * On boards larger than 8x8 generating all legal moves costs more than trying
+     * squares: the empty squares are tried in random order, and the first that
+     * turns discs is played, which picks every legal move with the same chance.
+     */
+    private int playRandomLarge(SplittableRandom random) {
+        int count = 0;
+        for (int w = 0; w < black.length; w++) {
+            for (long m = ~(black[w] | white[w]); m != 0; m &= m - 1) {
+                int sq = w * 64 + Long.numberOfTrailingZeros(m);
+                if (sq >= geometry.squares) {
+                    break;
+                }
+                empties[count++] = sq;
+            }
+        }
+        boolean passed = false;
+        while (count > 0) {
+            long[] own = player == 1 ? black : white;
+            long[] opp = player == 1 ? white : black;
+            int found = -1;
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int j = i + random.nextInt(count - i);
+                int sq = empties[j];
+                empties[j] = empties[i];
+                empties[i] = sq;
+                n = geometry.flips(own, opp, sq, turned, 0);
+                if (n > 0) {
+                    found = i;
+                    break;
+                }
+            }
+            if (found < 0) {
+                if (passed) {
+                    break;
+                }
+                passed = true;
+                player = 3 - player;
+                continue;
+            }
+            passed = false;
+            int sq = empties[found];
+            for (int i = 0; i < n; i++) {
+                BitboardN.set(own, turned[i]);
+                BitboardN.clear(opp, turned[i]);
+            }
+            BitboardN.set(own, sq);
+            empties[found] = empties[--count];
+            plies++;
+            player = 3 - player;
+        }
+        return discDifference();
+    }
+
+    // Fills moves with the legal moves of the given player and returns how many there are
+    private int generateMoves(int player) {
+        long[] own = player == 1 ? black : white;
+        long[] opp = player == 1 ? white : black;
+        if (size == Bitboard.SIZE) {
+            moves[0] = Bitboard.legalMoves(own[0], opp[0]);
+            return Long.bitCount(moves[0]);
+        }
+        geometry.legalMoves(own, opp, moves, scratch);
+        return BitboardN.count(moves);
+    }
+
+    // Returns the square of the move with the given index in moves
+    private int select(int index) {
+        for (int w = 0; ; w++) {
+            long m = moves[w];
+            int count = Long.bitCount(m);
+            if (index < count) {
+                for (; index > 0; index--) {
+                    m &= m - 1;
+                }
+                return w * 64 + Long.numberOfTrailingZeros(m);
+            }
+            index -= count;
+        }
+    }
+}
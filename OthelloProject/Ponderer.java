@@ -0,0 +1,180 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Searches on the opponent's time for OthelloAIDonathello.
+ *
+ * After decideMove has returned a move, the position after that move and the
+ * reply the search expects (the second move of the principal variation) is
+ * searched by iterative deepening on a background thread. When decideMove is
+ * called next, the pondering stops. If the opponent made the expected reply, the
+ * search is given the rest of the time of the move and its result is used, so
+ * the time the opponent took counts as our own. Otherwise the search is stopped
+ * and its result thrown away, but what it stored in the transposition table,
+ * which is shared with the main search, is kept.
+ *
+ * The pondering thread and the main search never run at the same time, so both
+ * can use the same AI to evaluate positions.
+ *
+ * All ponderers share one pool of daemon threads, which ends threads that have
+ * been idle for a minute, so AIs that are dropped without being stopped do not
+ * keep threads alive.
+ */
+public class Ponderer {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "donathello-ponder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AlphaBetaSearch search;
+
+    private Future<?> task;
+    // Hash and size of the position being pondered; the state itself is in use by the search
+    private long positionHash;
+    private int positionSquares;
+
+    // Deadline of the running iteration; guarded by this, so an iteration that is
+    // just starting does not overwrite a deadline set by finish
+    private long deadline;
+
+    // Result of the deepest completed iteration, written by the pondering thread
+    private volatile int bestSquare;
+    private volatile double value;
+    private volatile int completedDepth;
+
+    public Ponderer(OthelloAIDonathello evaluator, TranspositionTable transpositionTable) {
+        search = new AlphaBetaSearch(evaluator, transpositionTable);
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        search.setPool(pool);
+    }
+
+    public void setMoveOrdering(boolean orderMoves) {
+        search.setMoveOrdering(orderMoves);
+    }
+
+    /**
+     * Starts searching the given position, with the AI to move, in the
+     * background, until finish is called or the given time has passed. The state
+     * is not copied and must not be used afterwards.
+     */
+    public void start(GameState s, int maxDepth, long maxNanos) {
+        stop();
+        positionHash = s.getHash();
+        positionSquares = s.getSquareCount();
+        bestSquare = -1;
+        completedDepth = 0;
+        synchronized (this) {
+            deadline = System.nanoTime() + maxNanos;
+        }
+        int[] tokens = s.countTokens();
+        int lastDepth = Math.max(1, Math.min(maxDepth, s.getSquareCount() - tokens[0] - tokens[1]));
+        search.newSearch();
+        task = EXECUTOR.submit(() -> ponder(s, lastDepth));
+    }
+
+    /**
+     * Iterative deepening as in OthelloAIDonathello.iterativeDeepening, except
+     * that every iteration may be stopped.
+     */
+    private void ponder(GameState s, int lastDepth) {
+        for (int depth = 1; depth <= lastDepth; depth++) {
+            long stopAt;
+            synchronized (this) {
+                stopAt = deadline;
+                search.setDeadline(stopAt, true);
+            }
+            double found = search.search(s, depth, true, -Double.MAX_VALUE, Double.MAX_VALUE);
+            if (search.isAborted()) {
+                return;
+            }
+            bestSquare = search.getBestSquare();
+            value = found;
+            completedDepth = depth;
+            if (System.nanoTime() - stopAt >= 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops pondering. If s is the position being pondered, the search first
+     * continues until the given deadline (or until it is done), and true is
+     * returned if it completed at least one iteration; getBestSquare, getValue
+     * and getCompletedDepth then give its result. Otherwise the search is
+     * stopped at once and false is returned.
+     */
+    public boolean finish(GameState s, long deadline) {
+        if (task == null) {
+            return false;
+        }
+        boolean hit = s.getHash() == positionHash && s.getSquareCount() == positionSquares;
+        setDeadline(hit ? deadline : System.nanoTime());
+        await();
+        return hit && completedDepth > 0;
+    }
+
+    /**
+     * Stops pondering and waits for the pondering thread to finish.
+     */
+    public void stop() {
+        if (task != null) {
+            setDeadline(System.nanoTime());
+            await();
+        }
+    }
+
+    private synchronized void setDeadline(long deadline) {
+        this.deadline = deadline;
+        search.stopAt(deadline);
+    }
+
+    // Waits for the pondering thread even if interrupted, stopping it at once
+    // then, so the main search never runs at the same time
+    private void await() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    setDeadline(System.nanoTime());
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        } finally {
+            task = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getBestSquare() {
+        return bestSquare;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the number of nodes searched while pondering so far.
+     */
+    public long getNodes() {
+        return search.getNodes();
+    }
+}
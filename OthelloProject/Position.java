@@ -24,6 +24,11 @@ public class Position{
         return p.row == this.row && p.col == this.col;
     }
 	
+	@Override
+	public int hashCode() {
+		return 31 * col + row;
+	}
+	
 	@Override
 	public String toString(){
 		return "(" + col +", " + row + ")";
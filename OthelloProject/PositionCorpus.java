@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fixed sets of game states for benchmarks and reports. The same arguments
+ * always give the same states, so results of different runs can be compared.
+ */
+public final class PositionCorpus {
+
+    private PositionCorpus() {
+    }
+
+    /**
+     * Returns count states reached by random play from the start position, with
+     * between a quarter and three quarters of the board filled. Every state has
+     * at least one legal move for the player in turn.
+     */
+    public static List<GameState> midgame(int size, int count, long seed) {
+        Random random = new Random(seed);
+        int squares = size * size;
+        int[] moves = new int[squares];
+        List<GameState> states = new ArrayList<>(count);
+        while (states.size() < count) {
+            GameState s = new GameState(size, 1);
+            int target = squares / 4 + random.nextInt(squares / 2);
+            int discs = 4;
+            while (discs < target) {
+                int n = s.legalMoves(moves);
+                if (n == 0) {
+                    s.changePlayer();
+                    n = s.legalMoves(moves);
+                    if (n == 0) {
+                        break;
+                    }
+                }
+                s.makeMove(moves[random.nextInt(n)]);
+                discs++;
+            }
+            if (s.legalMoves(moves) > 0) {
+                states.add(new GameState(s));
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Returns count states reached by random play from the start position with
+     * exactly the given number of empty squares. Every state has at least one
+     * legal move for the player in turn.
+     */
+    public static List<GameState> endgame(int size, int count, int empties, long seed) {
+        Random random = new Random(seed);
+        int squares = size * size;
+        int[] moves = new int[squares];
+        List<GameState> states = new ArrayList<>(count);
+        while (states.size() < count) {
+            GameState s = new GameState(size, 1);
+            int discs = 4;
+            while (discs < squares - empties) {
+                int n = s.legalMoves(moves);
+                if (n == 0) {
+                    s.changePlayer();
+                    n = s.legalMoves(moves);
+                    if (n == 0) {
+                        break;
+                    }
+                }
+                s.makeMove(moves[random.nextInt(n)]);
+                discs++;
+            }
+            if (discs == squares - empties && s.legalMoves(moves) > 0) {
+                states.add(new GameState(s));
+            }
+        }
+        return states;
+    }
+}
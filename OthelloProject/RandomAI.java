@@ -1,25 +1,42 @@
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * A simple OthelloAI-implementation. The method to decide the next move just
  * returns a random legal move that it finds.
  *
+ * Each instance has its own random number generator, so an AI created with a
+ * seed makes the same moves every time. Deciding a move allocates nothing but
+ * the returned Position. For whole games of random moves, see
+ * RandomGameSimulator.
+ *
  * @author Mai Ajspur
  * @version 9.2.2018
  */
 public class RandomAI implements IOthelloAI {
 
+	private final SplittableRandom random;
+	private int[] moves = new int[0];
+
+	public RandomAI() {
+		this.random = new SplittableRandom();
+	}
+
+	/**
+	 * Creates an AI whose moves depend only on the given seed and the positions.
+	 */
+	public RandomAI(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+
 	/**
 	 * Returns a random legal move
 	 */
 	public Position decideMove(GameState s) {
-		ArrayList<Position> moves = s.legalMoves();
-		if (!moves.isEmpty()) {
-
-			Random ran = new Random();
-			int x = ran.nextInt(moves.size());
-			return moves.get(x);
+		if (moves.length < s.getSquareCount())
+			moves = new int[s.getSquareCount()];
+		int n = s.legalMoves(moves);
+		if (n > 0) {
+			return s.position(moves[random.nextInt(n)]);
 		} else
 			return new Position(-1, -1);
 	}
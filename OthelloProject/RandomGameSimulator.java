@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays complete games of uniformly random moves as fast as possible and
+ * reports statistics about them: how long games last, and how often the player
+ * who moves first wins, per board size.
+ *
+ * The games are played on PlayoutBoards, which allocate nothing per game, in
+ * batches spread over a thread pool. Every batch has its own SplittableRandom,
+ * split from one seeded generator in batch order, so the same seed always gives
+ * the same games, whatever the number of threads.
+ *
+ * Usage: java RandomGameSimulator [-games N] [-sizes N,N,...] [-threads N] [-seed N]
+ * Defaults: 1000000 games per size, sizes 8, 10, 12 and 16, one thread per core,
+ * seed 1.
+ */
+public class RandomGameSimulator {
+
+    private static final int BATCH_GAMES = 10_000;
+
+    /**
+     * Totals over a number of games on one board size.
+     */
+    public static final class Statistics {
+        /** Number of games by the number of moves played in them, passes not counted. */
+        public final long[] lengths;
+        public long games;
+        public long firstWins;
+        public long secondWins;
+        public long draws;
+        /** Sum of the final disc differences for the first player. */
+        public long discDifference;
+
+        public Statistics(int size) {
+            lengths = new long[size * size];
+        }
+
+        void add(Statistics other) {
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] += other.lengths[i];
+            }
+            games += other.games;
+            firstWins += other.firstWins;
+            secondWins += other.secondWins;
+            draws += other.draws;
+            discDifference += other.discDifference;
+        }
+
+        public long moves() {
+            long moves = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                moves += i * lengths[i];
+            }
+            return moves;
+        }
+
+        /**
+         * Returns the smallest length of at least the given fraction of the games.
+         */
+        public int lengthPercentile(double fraction) {
+            long seen = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                seen += lengths[i];
+                if (seen > 0 && seen >= fraction * games) {
+                    return i;
+                }
+            }
+            return lengths.length - 1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long games = 1_000_000;
+        int[] sizes = {8, 10, 12, 16};
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games": games = Long.parseLong(args[++i]); break;
+                case "-sizes":
+                    String[] parts = args[++i].split(",");
+                    sizes = new int[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        sizes[p] = Integer.parseInt(parts[p].trim());
+                    }
+                    break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-seed": seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Usage: java RandomGameSimulator [-games N] [-sizes N,N,...] [-threads N] "
+                            + "[-seed N]");
+                    System.exit(1);
+            }
+        }
+
+        System.out.println("Playing " + games + " random games per size on " + threads + " threads");
+        System.out.println("size       games   games/s     moves/s  length: mean  min  p10  p50  p90  max"
+                + "   first  second   draws  first disc diff");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int size : sizes) {
+                long start = System.nanoTime();
+                Statistics total = simulate(executor, size, games, seed);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                print(size, total, seconds);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Plays the given number of games on boards of the given size, black moving
+     * first, on the given executor, and returns their totals.
+     */
+    public static Statistics simulate(ExecutorService executor, int size, long games, long seed) throws Exception {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Future<Statistics>> batches = new ArrayList<>();
+        for (long played = 0; played < games; played += BATCH_GAMES) {
+            SplittableRandom batchRandom = random.split();
+            long batchGames = Math.min(BATCH_GAMES, games - played);
+            batches.add(executor.submit(() -> play(size, batchGames, batchRandom)));
+        }
+        Statistics total = new Statistics(size);
+        for (Future<Statistics> batch : batches) {
+            total.add(batch.get());
+        }
+        return total;
+    }
+
+    /**
+     * Plays the given number of games on one thread and returns their totals.
+     */
+    public static Statistics play(int size, long games, SplittableRandom random) {
+        Statistics stats = new Statistics(size);
+        GameState start = new GameState(size, 1);
+        PlayoutBoard board = new PlayoutBoard(size);
+        for (long g = 0; g < games; g++) {
+            board.set(start);
+            int difference = board.playRandom(random);
+            stats.lengths[board.getPlies()]++;
+            if (difference > 0) {
+                stats.firstWins++;
+            } else if (difference < 0) {
+                stats.secondWins++;
+            } else {
+                stats.draws++;
+            }
+            stats.discDifference += difference;
+        }
+        stats.games = games;
+        return stats;
+    }
+
+    private static void print(int size, Statistics s, double seconds) {
+        int min = 0;
+        while (min < s.lengths.length - 1 && s.lengths[min] == 0) {
+            min++;
+        }
+        System.out.printf(Locale.ROOT, "%4d %11d %9.0f %11.0f %13.1f %4d %4d %4d %4d %4d %6.1f%% %6.1f%% %6.1f%% %16.2f%n",
+                size, s.games, s.games / seconds, s.moves() / seconds, (double) s.moves() / s.games, min,
+                s.lengthPercentile(0.1), s.lengthPercentile(0.5), s.lengthPercentile(0.9), s.lengthPercentile(1),
+                100.0 * s.firstWins / s.games, 100.0 * s.secondWins / s.games, 100.0 * s.draws / s.games,
+                (double) s.discDifference / s.games);
+    }
+}
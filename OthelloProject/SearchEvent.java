@@ -0,0 +1,88 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one iteration of a search of OthelloAIDonathello,
+ * committed together with the call to SearchListener.iterationFinished when
+ * SearchStats.JFR is set. Record with e.g.
+ * java -Ddonathello.jfr=true -XX:StartFlightRecording=filename=search.jfr.
+ * When no recording is running, the event costs next to nothing.
+ */
+@Name("othello.SearchIteration")
+@Label("Search Iteration")
+@Category("Othello")
+@Description("One iteration of iterative deepening or one endgame solve")
+@StackTrace(false)
+class SearchEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Aborted")
+    boolean aborted;
+
+    @Label("Value")
+    double value;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Leaves")
+    long leaves;
+
+    @Label("Cutoff Rate")
+    double cutoffRate;
+
+    @Label("First Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Transposition Hit Rate")
+    double transpositionHitRate;
+
+    @Label("Effective Branching Factor")
+    double branchingFactor;
+
+    @Label("Principal Variation")
+    String principalVariation;
+
+    /**
+     * Returns a new event that has begun. Callers check SearchStats.JFR first, so
+     * that this class, and with it the flight recorder, is only loaded when asked
+     * for.
+     */
+    static SearchEvent begun() {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Fills in the event from the given statistics and commits it, if the event
+     * is enabled. The event must have been begun when the iteration started.
+     */
+    void commit(SearchStats it) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        method = it.getMethod();
+        depth = it.getDepth();
+        aborted = it.isAborted();
+        value = it.getValue();
+        nodes = it.getNodes();
+        leaves = it.getLeaves();
+        cutoffRate = it.getCutoffRate();
+        firstMoveCutoffRate = it.getFirstMoveCutoffRate();
+        transpositionHitRate = it.getTranspositionHitRate();
+        branchingFactor = it.getBranchingFactor();
+        principalVariation = it.getPrincipalVariation().toString();
+        commit();
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Receives the progress and result of the searches of OthelloAIDonathello (see
+ * OthelloAIDonathello.setSearchListener). Methods are called on the thread
+ * calling decideMove, and should return quickly.
+ */
+public interface SearchListener {
+
+    /**
+     * Called after every iteration of iterative deepening, including the one cut
+     * short by the deadline, and after every attempt of the endgame solver.
+     */
+    default void iterationFinished(SearchStats iteration) {
+    }
+
+    /**
+     * Called when decideMove has decided on a move. total holds the statistics of
+     * the whole decision, and the value and depth of the iteration the move came
+     * from.
+     */
+    default void moveDecided(Position move, SearchStats total) {
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics of one iteration of a search, or of a whole decision, as passed to
+ * a {@link SearchListener}.
+ *
+ * The counters of the tree (leaves, cutoffs and transposition table probes) are
+ * only kept if {@link #ENABLED} is true, which is set with the system property
+ * donathello.stats. It is a static final, so when it is false the JIT removes
+ * the counting from the search altogether. Nodes, time, value and principal
+ * variation are always filled in.
+ *
+ * If {@link #JFR} is true, set with the system property donathello.jfr, every
+ * iteration is also recorded as a flight recorder event (see SearchEvent). It
+ * is off by default because loading the flight recorder takes a few hundred
+ * milliseconds, which would come out of the time of the first move.
+ */
+public final class SearchStats {
+
+    /** Whether the search keeps the counters of the tree. */
+    public static final boolean ENABLED = Boolean.getBoolean("donathello.stats");
+
+    /** Whether every iteration is recorded as a flight recorder event. */
+    public static final boolean JFR = Boolean.getBoolean("donathello.jfr");
+
+    /**
+     * How a move was found: by the heuristic search, by the search started while
+     * pondering, by the endgame solver or from the opening book.
+     */
+    public static final String SEARCH = "search";
+    public static final String PONDER = "ponder";
+    public static final String ENDGAME = "endgame";
+    public static final String BOOK = "book";
+
+    // Counted by the search when ENABLED
+    long leaves;
+    long interiorNodes;
+    long cutoffs;
+    long firstMoveCutoffs;
+    long ttProbes;
+    long ttHits;
+    long ttCutoffs;
+
+    String method = SEARCH;
+    int depth;
+    long nodes;
+    long nanos;
+    double value;
+    boolean aborted;
+    double branchingFactor;
+    List<Position> principalVariation = Collections.emptyList();
+
+    /**
+     * Adds the counters of the tree of the given statistics to these.
+     */
+    void add(SearchStats other) {
+        leaves += other.leaves;
+        interiorNodes += other.interiorNodes;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        ttProbes += other.ttProbes;
+        ttHits += other.ttHits;
+        ttCutoffs += other.ttCutoffs;
+    }
+
+    /** Returns SEARCH, PONDER, ENDGAME or BOOK. */
+    public String getMethod() {
+        return method;
+    }
+
+    /** Returns the depth searched, or for the endgame solver the number of empty squares. */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Returns the value of the best move; for the endgame solver the final disc difference. */
+    public double getValue() {
+        return value;
+    }
+
+    /** Returns true if the search ran out of time, in which case its value and move are not used. */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /** Returns the number of positions evaluated by the heuristic. */
+    public long getLeaves() {
+        return leaves;
+    }
+
+    /** Returns the fraction of searched nodes with moves in which a move caused a cutoff. */
+    public double getCutoffRate() {
+        return interiorNodes == 0 ? 0 : (double) cutoffs / interiorNodes;
+    }
+
+    /** Returns the fraction of cutoffs that were caused by the first move tried. */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    public long getTranspositionProbes() {
+        return ttProbes;
+    }
+
+    /** Returns the fraction of transposition table probes that found the position. */
+    public double getTranspositionHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    /** Returns the fraction of transposition table probes whose result was used without searching. */
+    public double getTranspositionCutoffRate() {
+        return ttProbes == 0 ? 0 : (double) ttCutoffs / ttProbes;
+    }
+
+    /**
+     * Returns the effective branching factor: the nodes of this iteration divided
+     * by the nodes of the one before, or 0 for the first iteration.
+     */
+    public double getBranchingFactor() {
+        return branchingFactor;
+    }
+
+    /**
+     * Returns the moves the search expects to be played from the root, best move
+     * first, as far as the transposition table knows them.
+     */
+    public List<Position> getPrincipalVariation() {
+        return principalVariation;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays games of OthelloAIDonathello against itself and writes every position
+ * of them, labelled with the final disc difference for black, as TrainingData
+ * for WeightFitter.
+ *
+ * Every game starts with a number of random moves, so the games differ, and is
+ * then played by searching to a fixed depth without a time limit. Positions
+ * with at most -exact empty squares are labelled with their value found by an
+ * EndgameSolver instead of the result of the game. The games run in parallel,
+ * one AI per thread, and the positions are streamed to the file as each game
+ * ends. The AIs use the pattern weights, if any (see OthelloAIDonathello), so
+ * playing and fitting can be repeated to improve the weights.
+ *
+ * Usage: java SelfPlay [-size N] [-games N] [-random N] [-depth N] [-exact N] [-threads N] [-seed N] [-out file]
+ * Defaults: 8x8, 1000 games, 8 random moves, depth 4, no positions solved, one
+ * thread per core, seed 1, selfplay.data.
+ */
+public class SelfPlay {
+
+    public static void main(String[] args) throws Exception {
+        int size = 8;
+        int games = 1000;
+        int random = 8;
+        int depth = 4;
+        int exact = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        String out = "selfplay.data";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size": size = Integer.parseInt(args[++i]); break;
+                case "-games": games = Integer.parseInt(args[++i]); break;
+                case "-random": random = Integer.parseInt(args[++i]); break;
+                case "-depth": depth = Integer.parseInt(args[++i]); break;
+                case "-exact": exact = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-seed": seed = Long.parseLong(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                default:
+                    System.err.println("Usage: java SelfPlay [-size N] [-games N] [-random N] [-depth N] [-exact N] "
+                            + "[-threads N] [-seed N] [-out file]");
+                    System.exit(1);
+            }
+        }
+
+        int searchDepth = depth;
+        ThreadLocal<OthelloAIDonathello> ais = ThreadLocal.withInitial(() -> {
+            OthelloAIDonathello ai = new OthelloAIDonathello();
+            ai.setOpeningBook(null);
+            ai.setMaxDepth(searchDepth);
+            ai.setMoveTime(Long.MAX_VALUE / 4_000_000);
+            ai.setSearchListener(new SearchListener() {});
+            return ai;
+        });
+        ThreadLocal<EndgameSolver> solvers = ThreadLocal.withInitial(EndgameSolver::new);
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Path file = Paths.get(out);
+        long start = System.nanoTime();
+        try (TrainingData.Writer writer = new TrainingData.Writer(file, size)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int g = 0; g < games; g++) {
+                SplittableRandom rng = new SplittableRandom(seed * 1_000_003 + g);
+                int boardSize = size;
+                int randomMoves = random;
+                int solveEmpties = exact;
+                futures.add(executor.submit(() -> {
+                    playGame(boardSize, randomMoves, solveEmpties, rng, ais.get(), solvers.get(), writer);
+                    return null;
+                }));
+            }
+            for (int g = 0; g < games; g++) {
+                futures.get(g).get();
+                if ((g + 1) % 100 == 0) {
+                    console.printf("%d games, %d positions%n", g + 1, writer.getCount());
+                }
+            }
+            console.printf("Wrote %d positions of %d games to %s in %.1fs%n", writer.getCount(), games, file,
+                    (System.nanoTime() - start) / 1e9);
+        } finally {
+            System.setOut(console);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game, the first moves at random and the rest by the AI, and
+     * writes its positions with their labels.
+     */
+    static void playGame(int size, int randomMoves, int exact, SplittableRandom rng, OthelloAIDonathello ai,
+            EndgameSolver solver, TrainingData.Writer writer) throws Exception {
+        GameState s = new GameState(size, 1);
+        int words = BitboardN.forSize(size).words;
+        List<long[]> discs = new ArrayList<>();
+        List<int[]> turns = new ArrayList<>(); // player in turn, and the exact value or Integer.MIN_VALUE
+        int[] moves = new int[size * size];
+        for (int ply = 0; !s.isFinished(); ply++) {
+            int n = s.legalMoves(moves);
+            if (n == 0) {
+                s.changePlayer();
+                continue;
+            }
+            long[] position = new long[2 * words];
+            s.copyDiscs(1, position);
+            long[] white = new long[words];
+            s.copyDiscs(2, white);
+            System.arraycopy(white, 0, position, words, words);
+            int player = s.getPlayerInTurn();
+            int value = Integer.MIN_VALUE;
+            if (s.getSquareCount() - s.countTokens(1) - s.countTokens(2) <= exact) {
+                solver.clearDeadline();
+                int forPlayer = solver.solve(new GameState(s));
+                value = player == 1 ? forPlayer : -forPlayer;
+            }
+            discs.add(position);
+            turns.add(new int[] {player, value});
+
+            int move = ply < randomMoves ? moves[rng.nextInt(n)] : s.square(ai.decideMove(new GameState(s)));
+            s.makeMove(move);
+        }
+        int result = s.countTokens(1) - s.countTokens(2);
+        long[] black = new long[words];
+        long[] white = new long[words];
+        for (int i = 0; i < discs.size(); i++) {
+            System.arraycopy(discs.get(i), 0, black, 0, words);
+            System.arraycopy(discs.get(i), words, white, 0, words);
+            int[] turn = turns.get(i);
+            writer.write(black, white, turn[0], turn[1] == Integer.MIN_VALUE ? result : turn[1]);
+        }
+    }
+}
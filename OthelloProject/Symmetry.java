@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The 8 symmetries of a square board (the identity, three rotations and four
+ * reflections), and canonical forms of game states under them.
+ *
+ * A symmetry is numbered 0 to 7 by 3 bits, applied in this order to a square
+ * (col, row): bit 0 swaps col and row, bit 1 mirrors col (col becomes
+ * size - 1 - col), bit 2 mirrors row. 0 is the identity.
+ *
+ * Two states that are the same up to a symmetry are the same position for all
+ * purposes of play. The canonical form of a state is the state under the
+ * symmetry that gives it the smallest Zobrist hash, so symmetric states have the
+ * same canonical form and the same canonical hash. A move found for the canonical
+ * form is mapped back to the original state with {@link #fromCanonical(int, int)}.
+ *
+ * On 8x8 boards discs are transformed with a few shifts and masks per symmetry;
+ * on other sizes through a table giving the image of every square.
+ */
+public final class Symmetry {
+
+    /** Number of symmetries of a square board. */
+    public static final int COUNT = 8;
+
+    /** The symmetry that leaves every square in place. */
+    public static final int IDENTITY = 0;
+
+    private static final ConcurrentHashMap<Integer, Symmetry> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Number of columns (and rows) of the boards. */
+    public final int size;
+
+    // image[t][sq] is the square sq is moved to by symmetry t
+    private final int[][] image;
+    private final Zobrist zobrist;
+
+    private Symmetry(int size) {
+        this.size = size;
+        this.zobrist = Zobrist.forSize(size);
+        int squares = size * size;
+        image = new int[COUNT][squares];
+        for (int t = 0; t < COUNT; t++) {
+            for (int sq = 0; sq < squares; sq++) {
+                int col = sq / size;
+                int row = sq % size;
+                if ((t & 1) != 0) {
+                    int c = col;
+                    col = row;
+                    row = c;
+                }
+                if ((t & 2) != 0) {
+                    col = size - 1 - col;
+                }
+                if ((t & 4) != 0) {
+                    row = size - 1 - row;
+                }
+                image[t][sq] = col * size + row;
+            }
+        }
+    }
+
+    /**
+     * Returns the (shared) symmetries of boards with the given number of columns and rows.
+     */
+    public static Symmetry forSize(int size) {
+        return INSTANCES.computeIfAbsent(size, Symmetry::new);
+    }
+
+    /**
+     * Returns the symmetry that undoes symmetry t.
+     */
+    public static int inverse(int t) {
+        // Mirrors undo themselves, but after a swap they act on the other axis
+        return (t & 1) == 0 ? t : 1 | (t & 2) << 1 | (t & 4) >> 1;
+    }
+
+    /**
+     * Returns the square that symmetry t moves square sq to. GameState.PASS is
+     * returned unchanged.
+     */
+    public int transform(int t, int sq) {
+        return sq == GameState.PASS ? sq : image[t][sq];
+    }
+
+    /**
+     * Returns the position that symmetry t moves the given position to.
+     */
+    public Position transform(int t, Position place) {
+        int sq = transform(t, place.col * size + place.row);
+        return new Position(sq / size, sq % size);
+    }
+
+    /**
+     * Writes the discs of the bitset (indexed as in GameState.square) moved by
+     * symmetry t into out, which must not be the same array.
+     */
+    public void transform(int t, long[] discs, long[] out) {
+        if (size == 8) {
+            out[0] = transform8(t, discs[0]);
+            return;
+        }
+        int[] map = image[t];
+        Arrays.fill(out, 0);
+        for (int w = 0; w < discs.length; w++) {
+            for (long d = discs[w]; d != 0; d &= d - 1) {
+                BitboardN.set(out, map[w * 64 + Long.numberOfTrailingZeros(d)]);
+            }
+        }
+    }
+
+    /**
+     * Returns the 8x8 bitboard moved by symmetry t. A bitboard holds (col, row) in
+     * bit col * 8 + row, so col is the byte and row the bit within the byte.
+     */
+    public static long transform8(int t, long discs) {
+        if ((t & 1) != 0) {
+            // transpose: bit col * 8 + row moves to bit row * 8 + col
+            long x = 0x0F0F0F0F00000000L & (discs ^ (discs << 28));
+            discs ^= x ^ (x >>> 28);
+            x = 0x3333000033330000L & (discs ^ (discs << 14));
+            discs ^= x ^ (x >>> 14);
+            x = 0x5500550055005500L & (discs ^ (discs << 7));
+            discs ^= x ^ (x >>> 7);
+        }
+        if ((t & 2) != 0) {
+            discs = Long.reverseBytes(discs);
+        }
+        if ((t & 4) != 0) {
+            // reverse the bits of every byte
+            discs = (discs >>> 1) & 0x5555555555555555L | (discs & 0x5555555555555555L) << 1;
+            discs = (discs >>> 2) & 0x3333333333333333L | (discs & 0x3333333333333333L) << 2;
+            discs = (discs >>> 4) & 0x0F0F0F0F0F0F0F0FL | (discs & 0x0F0F0F0F0F0F0F0FL) << 4;
+        }
+        return discs;
+    }
+
+    /**
+     * Returns a new state with the discs of s moved by symmetry t and the same
+     * player in turn. Its hash is hashes(s)[t].
+     */
+    public GameState transform(int t, GameState s) {
+        int words = BitboardN.forSize(size).words;
+        long[] black = new long[words];
+        long[] white = new long[words];
+        long[] discs = new long[words];
+        s.copyDiscs(1, discs);
+        transform(t, discs, black);
+        s.copyDiscs(2, discs);
+        transform(t, discs, white);
+        return new GameState(size, black, white, s.getPlayerInTurn());
+    }
+
+    /**
+     * Writes the Zobrist hash of s under every symmetry into hashes, so hashes[t]
+     * is the hash s would have after transforming it by t.
+     */
+    public void hashes(GameState s, long[] hashes) {
+        long side = s.getPlayerInTurn() == 2 ? zobrist.sideToMove : 0;
+        for (int t = 0; t < COUNT; t++) {
+            hashes[t] = side;
+        }
+        long[] discs = new long[BitboardN.forSize(size).words];
+        for (int player = 1; player <= 2; player++) {
+            s.copyDiscs(player, discs);
+            for (int w = 0; w < discs.length; w++) {
+                for (long d = discs[w]; d != 0; d &= d - 1) {
+                    int sq = w * 64 + Long.numberOfTrailingZeros(d);
+                    for (int t = 0; t < COUNT; t++) {
+                        hashes[t] ^= zobrist.disc(player, image[t][sq]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the symmetry that takes s to its canonical form.
+     */
+    public int canonicalTransform(GameState s) {
+        long[] hashes = new long[COUNT];
+        hashes(s, hashes);
+        return canonicalTransform(hashes);
+    }
+
+    /**
+     * Returns the hash of the canonical form of s, which is the same for all
+     * states that are the same up to a symmetry.
+     */
+    public long canonicalHash(GameState s) {
+        long[] hashes = new long[COUNT];
+        hashes(s, hashes);
+        return hashes[canonicalTransform(hashes)];
+    }
+
+    /**
+     * Returns the canonical form of s as a new state.
+     */
+    public GameState canonical(GameState s) {
+        return transform(canonicalTransform(s), s);
+    }
+
+    /**
+     * Returns the square that square sq of a state becomes in its canonical form,
+     * where t is the canonicalTransform of the state.
+     */
+    public int toCanonical(int t, int sq) {
+        return transform(t, sq);
+    }
+
+    /**
+     * Returns the square of a state that square sq of its canonical form comes
+     * from, where t is the canonicalTransform of the state.
+     */
+    public int fromCanonical(int t, int sq) {
+        return transform(inverse(t), sq);
+    }
+
+    /**
+     * Returns the symmetry that takes a state to its canonical form, given the
+     * hashes of the state written by {@link #hashes(GameState, long[])}.
+     */
+    public static int canonicalTransform(long[] hashes) {
+        int best = 0;
+        for (int t = 1; t < hashes.length; t++) {
+            if (hashes[t] < hashes[best]) {
+                best = t;
+            }
+        }
+        return best;
+    }
+}
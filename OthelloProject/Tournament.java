@@ -0,0 +1,407 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Plays games between IOthelloAI implementations without a GUI.
+ *
+ * Every pair of the given AIs plays the given number of games, alternating who
+ * plays black. The games run in parallel on a thread pool, and every game gets
+ * fresh instances of both AIs, created the same way as Othello does. After each
+ * game a line with the result and the move latencies is appended to the output
+ * file, as CSV or, if the file name ends in .json, as one JSON object per line.
+ * A summary per AI is printed at the end.
+ *
+ * An AI that returns an illegal move, or throws anything, loses the game, and
+ * so does an AI that takes longer than the -moveTimeout for a move: every move
+ * is decided on a thread of its own game, which is given up on when the time
+ * is over, so a hanging AI does not hold up the tournament. With -time the
+ * games are played with chess clocks: every AI has that many milliseconds for
+ * all its moves, plus the -increment after each move, is given its clock
+ * through decideMove(GameState, MoveClock), and loses if it runs out of time.
+ * With -record the moves of every game are appended to the given file (see
+ * GameRecord).
+ *
+ * Usage: java Tournament [-games N] [-size N] [-threads N] [-time ms] [-increment ms] [-moveTimeout ms]
+ * [-out file] [-record file] [-verbose] AI1 AI2 [AI3 ...]
+ * Defaults: 10 games per pairing, 8x8, one thread per core, no clocks, a move timeout of the system
+ * property othello.moveTimeoutMs or 10 seconds (as in OthelloGUI), results.csv.
+ * Output of the AIs themselves is suppressed unless -verbose is given.
+ */
+public class Tournament {
+
+    static final long DEFAULT_MOVE_TIMEOUT_MS = 10000;
+
+    /**
+     * Outcome of a single game.
+     */
+    static final class Result {
+        final int pairing;
+        final int game;
+        final String black;
+        final String white;
+        final int blackTokens;
+        final int whiteTokens;
+        final int winner; // 0 for a tie
+        final String reason;
+        final int moves;
+        final long[] blackLatencies; // nanoseconds per decideMove call, sorted
+        final long[] whiteLatencies;
+
+        Result(int pairing, int game, String black, String white, int blackTokens, int whiteTokens, int winner,
+                String reason, int moves, long[] blackLatencies, long[] whiteLatencies) {
+            this.pairing = pairing;
+            this.game = game;
+            this.black = black;
+            this.white = white;
+            this.blackTokens = blackTokens;
+            this.whiteTokens = whiteTokens;
+            this.winner = winner;
+            this.reason = reason;
+            this.moves = moves;
+            this.blackLatencies = blackLatencies;
+            this.whiteLatencies = whiteLatencies;
+        }
+    }
+
+    /**
+     * Totals for one AI over the whole tournament.
+     */
+    private static final class Standing {
+        final String name;
+        int games;
+        int wins;
+        int losses;
+        long discDifferential;
+        long[] latencies = new long[64];
+        int latencyCount;
+
+        Standing(String name) {
+            this.name = name;
+        }
+
+        void add(Result r, boolean asBlack) {
+            int player = asBlack ? 1 : 2;
+            games++;
+            if (r.winner == player) {
+                wins++;
+            } else if (r.winner != 0) {
+                losses++;
+            }
+            discDifferential += asBlack ? r.blackTokens - r.whiteTokens : r.whiteTokens - r.blackTokens;
+            for (long l : asBlack ? r.blackLatencies : r.whiteLatencies) {
+                if (latencyCount == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, 2 * latencyCount);
+                }
+                latencies[latencyCount++] = l;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 10;
+        int size = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long time = 0;
+        long increment = 0;
+        long moveTimeout = Long.getLong("othello.moveTimeoutMs", DEFAULT_MOVE_TIMEOUT_MS);
+        String out = "results.csv";
+        String record = null;
+        boolean verbose = false;
+        List<String> ais = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games": games = Integer.parseInt(args[++i]); break;
+                case "-size": size = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-time": time = Long.parseLong(args[++i]); break;
+                case "-increment": increment = Long.parseLong(args[++i]); break;
+                case "-moveTimeout": moveTimeout = Long.parseLong(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                case "-record": record = args[++i]; break;
+                case "-verbose": verbose = true; break;
+                default: ais.add(args[i]);
+            }
+        }
+        if (ais.size() < 2 || size < 4 || size % 2 != 0 || (record != null && size > GameRecord.MAX_SIZE)) {
+            System.err.println("Usage: java Tournament [-games N] [-size N] [-threads N] [-time ms] [-increment ms] "
+                    + "[-moveTimeout ms] [-out file] [-record file] [-verbose] AI1 AI2 [AI3 ...]");
+            System.err.println("\tAIs must be classes implementing IOthelloAI; size must be even and at least 4,"
+                    + " and at most " + GameRecord.MAX_SIZE + " to record games.");
+            System.exit(1);
+        }
+        for (String ai : ais) {
+            newAI(ai); // fail early on class names that cannot be loaded
+        }
+
+        PrintStream console = System.out;
+        if (!verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        boolean json = out.endsWith(".json");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        try (Writer writer = new BufferedWriter(new FileWriter(out));
+                GameRecord.Writer recorder = record == null ? null : new GameRecord.Writer(Paths.get(record))) {
+            if (!json) {
+                writer.write(csvHeader());
+            }
+            int pairing = 0;
+            for (int a = 0; a < ais.size(); a++) {
+                for (int b = a + 1; b < ais.size(); b++) {
+                    for (int g = 0; g < games; g++) {
+                        String black = g % 2 == 0 ? ais.get(a) : ais.get(b);
+                        String white = g % 2 == 0 ? ais.get(b) : ais.get(a);
+                        int p = pairing;
+                        int game = g;
+                        int boardSize = size;
+                        long timeMillis = time;
+                        long incrementMillis = increment;
+                        long moveTimeoutMillis = moveTimeout;
+                        futures.add(executor.submit(() -> {
+                            Result r = playGame(p, game, black, white, boardSize, timeMillis, incrementMillis,
+                                    moveTimeoutMillis, recorder);
+                            synchronized (writer) {
+                                writer.write(json ? toJson(r) : toCsv(r));
+                                writer.flush();
+                            }
+                            return r;
+                        }));
+                    }
+                    pairing++;
+                }
+            }
+
+            List<Standing> standings = new ArrayList<>();
+            for (String ai : ais) {
+                standings.add(new Standing(ai));
+            }
+            for (Future<Result> f : futures) {
+                Result r = f.get();
+                standings.get(ais.indexOf(r.black)).add(r, true);
+                standings.get(ais.indexOf(r.white)).add(r, false);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.setOut(console);
+            System.out.printf(Locale.ROOT, "%d games in %.1fs (%.2f games/s) on %d threads, results in %s%n",
+                    futures.size(), seconds, futures.size() / seconds, threads, out);
+            System.out.println("AI                             games   wins losses  avg disc diff  "
+                    + "p50 ms  p90 ms  p99 ms  max ms");
+            for (Standing s : standings) {
+                long[] l = Arrays.copyOf(s.latencies, s.latencyCount);
+                Arrays.sort(l);
+                System.out.printf(Locale.ROOT, "%-30s %6d %6d %6d %14.2f %7.1f %7.1f %7.1f %7.1f%n", s.name, s.games,
+                        s.wins, s.losses, (double) s.discDifferential / s.games, percentile(l, 50) / 1e6,
+                        percentile(l, 90) / 1e6, percentile(l, 99) / 1e6, percentile(l, 100) / 1e6);
+            }
+        } finally {
+            System.setOut(console);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game between fresh instances of the given AI classes and returns
+     * the result. If timeMillis is positive the game is played with clocks of
+     * that many milliseconds and the given increment per move. An AI that takes
+     * longer than moveTimeoutMillis for a move is interrupted and loses. If
+     * recorder is not null the game is written to it.
+     */
+    static Result playGame(int pairing, int game, String blackName, String whiteName, int size, long timeMillis,
+            long incrementMillis, long moveTimeoutMillis, GameRecord.Writer recorder) throws Exception {
+        IOthelloAI[] players = {null, newAI(blackName), newAI(whiteName)};
+        long[][] latencies = {null, new long[size * size], new long[size * size]};
+        int[] counts = new int[3];
+        GameState state = new GameState(size, 1);
+        GameClock clock = timeMillis > 0 ? new GameClock(timeMillis, incrementMillis) : null;
+        GameRecord record = recorder == null ? null : new GameRecord(size, 1);
+        int moves = 0;
+        int forfeit = 0;
+        String reason = "finished";
+        int end = GameRecord.FINISHED;
+        // Daemon, so an AI that ignores being interrupted cannot keep the program from ending
+        ExecutorService decider = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "tournament-ai");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (!state.isFinished()) {
+                if (state.mustPass()) {
+                    state.changePlayer();
+                    if (record != null) {
+                        record.addMove(GameState.PASS);
+                    }
+                    continue;
+                }
+                int current = state.getPlayerInTurn();
+                IOthelloAI ai = players[current];
+                GameState position = new GameState(state);
+                long limit = moveTimeoutMillis;
+                MoveClock moveClock = null;
+                if (clock != null) {
+                    clock.start(current);
+                    moveClock = clock.moveClock(current);
+                    limit = Math.min(limit, moveClock.getRemainingMillis() + 1);
+                }
+                MoveClock playerClock = moveClock;
+                long t0 = System.nanoTime();
+                Future<Position> decision = decider.submit(() -> playerClock == null ? ai.decideMove(position)
+                        : ai.decideMove(position, playerClock));
+                Position place;
+                try {
+                    place = decision.get(limit, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    decision.cancel(true);
+                    forfeit = current;
+                    reason = clock != null && clock.isOutOfTime(current) ? "time" : "timeout";
+                    end = GameRecord.TIME;
+                    break;
+                } catch (ExecutionException e) {
+                    forfeit = current;
+                    reason = "exception: " + e.getCause();
+                    end = GameRecord.ERROR;
+                    break;
+                }
+                long latency = System.nanoTime() - t0;
+                if (counts[current] == latencies[current].length) {
+                    latencies[current] = Arrays.copyOf(latencies[current], 2 * counts[current]);
+                }
+                latencies[current][counts[current]++] = latency;
+                if (clock != null && !clock.stop()) {
+                    forfeit = current;
+                    reason = "time";
+                    end = GameRecord.TIME;
+                    break;
+                }
+                if (place == null || !state.insertToken(place)) {
+                    forfeit = current;
+                    reason = "illegal move " + place;
+                    end = GameRecord.ILLEGAL_MOVE;
+                    break;
+                }
+                if (record != null) {
+                    record.addMove(state.square(place));
+                }
+                moves++;
+            }
+        } finally {
+            decider.shutdownNow();
+        }
+
+        int[] tokens = state.countTokens();
+        int winner;
+        if (forfeit != 0) {
+            winner = forfeit == 1 ? 2 : 1;
+        } else {
+            winner = tokens[0] > tokens[1] ? 1 : tokens[1] > tokens[0] ? 2 : 0;
+        }
+        if (record != null) {
+            record.finish(state, winner, end);
+            recorder.write(record);
+            recorder.flush();
+        }
+        long[] black = Arrays.copyOf(latencies[1], counts[1]);
+        long[] white = Arrays.copyOf(latencies[2], counts[2]);
+        Arrays.sort(black);
+        Arrays.sort(white);
+        return new Result(pairing, game, blackName, whiteName, tokens[0], tokens[1], winner, reason, moves, black,
+                white);
+    }
+
+    static IOthelloAI newAI(String className) throws Exception {
+        IOthelloAI ai = Othello.parseGameLogicParam(className);
+        if (ai == null) {
+            throw new IllegalArgumentException("Tournaments are for AIs only, not " + className);
+        }
+        return ai;
+    }
+
+    /**
+     * Returns the given percentile (0 to 100) of the sorted values, or 0 if there
+     * are none.
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static String csvHeader() {
+        return "pairing,game,black,white,black_tokens,white_tokens,winner,reason,moves,"
+                + "black_p50_ms,black_p90_ms,black_p99_ms,black_max_ms,"
+                + "white_p50_ms,white_p90_ms,white_p99_ms,white_max_ms\n";
+    }
+
+    private static String toCsv(Result r) {
+        return String.format(Locale.ROOT, "%d,%d,%s,%s,%d,%d,%d,\"%s\",%d,%s,%s%n", r.pairing, r.game, r.black,
+                r.white, r.blackTokens, r.whiteTokens, r.winner, r.reason.replace("\"", "\"\""), r.moves,
+                latencyColumns(r.blackLatencies), latencyColumns(r.whiteLatencies));
+    }
+
+    private static String toJson(Result r) {
+        return String.format(Locale.ROOT,
+                "{\"pairing\":%d,\"game\":%d,\"black\":%s,\"white\":%s,\"black_tokens\":%d,"
+                        + "\"white_tokens\":%d,\"winner\":%d,\"reason\":%s,\"moves\":%d,"
+                        + "\"black_latency_ms\":%s,\"white_latency_ms\":%s}%n",
+                r.pairing, r.game, jsonString(r.black), jsonString(r.white), r.blackTokens, r.whiteTokens, r.winner,
+                jsonString(r.reason), r.moves, latencyObject(r.blackLatencies), latencyObject(r.whiteLatencies));
+    }
+
+    /**
+     * Returns the given text as a JSON string literal. Control characters are
+     * escaped too, so a reason with line breaks (such as an exception message)
+     * keeps the output at one object per line.
+     */
+    private static String jsonString(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String latencyObject(long[] sorted) {
+        return String.format(Locale.ROOT, "{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6, percentile(sorted, 99) / 1e6,
+                percentile(sorted, 100) / 1e6);
+    }
+
+    /**
+     * Returns the 50th, 90th, 99th and 100th percentile latency in milliseconds.
+     */
+    private static String latencyColumns(long[] sorted) {
+        return String.format(Locale.ROOT, "%.3f,%.3f,%.3f,%.3f", percentile(sorted, 50) / 1e6,
+                percentile(sorted, 90) / 1e6, percentile(sorted, 99) / 1e6, percentile(sorted, 100) / 1e6);
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Files of labelled positions to fit evaluation weights to, as written by
+ * SelfPlay and read by WeightFitter.
+ *
+ * A file has a 16 byte header (magic number, version, board size, and an unused
+ * int) followed by one record per position: the discs of black and of white as
+ * bitsets (indexed as in GameState.square, one long per 64 squares), the player
+ * in turn as a byte, and the label, the final disc difference for black, as a
+ * short. On 8x8 boards a record is 19 bytes.
+ *
+ * Files are written and read as streams, one record at a time, so they can be
+ * much larger than the heap.
+ */
+public final class TrainingData {
+
+    private static final int MAGIC = 0x5452_4431; // "TRD1"
+    private static final int VERSION = 1;
+
+    private TrainingData() {
+    }
+
+    /**
+     * Appends records to a new file. Safe to use from several threads.
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final int words;
+        private long count;
+
+        /**
+         * Creates the given file, for positions on boards with the given number of
+         * columns and rows.
+         */
+        public Writer(Path file, int size) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            words = BitboardN.forSize(size).words;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(0);
+        }
+
+        /**
+         * Writes a record for the position with the given discs and player in turn,
+         * labelled with the given disc difference for black.
+         */
+        public synchronized void write(long[] black, long[] white, int player, int label) throws IOException {
+            for (int w = 0; w < words; w++) {
+                out.writeLong(black[w]);
+            }
+            for (int w = 0; w < words; w++) {
+                out.writeLong(white[w]);
+            }
+            out.writeByte(player);
+            out.writeShort(label);
+            count++;
+        }
+
+        /**
+         * Returns the number of records written.
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the records of a file one at a time: after next has returned true,
+     * the fields hold the record read.
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+
+        /** Number of columns (and rows) of the boards. */
+        public final int size;
+        /** Discs of black and white in the record read. */
+        public final long[] black;
+        public final long[] white;
+        /** Player in turn in the record read. */
+        public int player;
+        /** Final disc difference for black in the record read. */
+        public int label;
+
+        /**
+         * Opens the given file.
+         *
+         * @throws IOException if the file cannot be read or is not training data.
+         */
+        public Reader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException(file + " is not training data");
+                }
+                size = in.readInt();
+                in.readInt();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            int words = BitboardN.forSize(size).words;
+            black = new long[words];
+            white = new long[words];
+        }
+
+        /**
+         * Reads the next record, or returns false at the end of the file.
+         *
+         * @throws IOException if the file cannot be read or ends inside a record.
+         */
+        public boolean next() throws IOException {
+            try {
+                black[0] = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            for (int w = 1; w < black.length; w++) {
+                black[w] = in.readLong();
+            }
+            for (int w = 0; w < white.length; w++) {
+                white[w] = in.readLong();
+            }
+            player = in.readByte();
+            label = in.readShort();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
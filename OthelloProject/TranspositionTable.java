@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, indexed by the Zobrist hash of a
+ * game state (see {@link GameState#getHash()}).
+ *
+ * Entries are packed into three primitive arrays, so the table is allocated
+ * once and creates no garbage while searching. Each entry holds the hash, the
+ * score, and a packed word with the searched depth, the bound type, the best
+ * move and the search generation it was written in.
+ *
+ * When two positions map to the same slot, the entry searched deepest is kept,
+ * except that entries left over from earlier searches (older generations) are
+ * always replaced.
+ *
+ * The hash is stored XOR'ed with the other two words, so an entry torn by
+ * concurrent writers fails the key check instead of returning mixed data.
+ */
+public class TranspositionTable {
+
+    /** Bound type: the score is the exact value of the position. */
+    public static final int EXACT = 1;
+    /** Bound type: the value of the position is at least the score. */
+    public static final int LOWER = 2;
+    /** Bound type: the value of the position is at most the score. */
+    public static final int UPPER = 3;
+
+    /** Number of bytes used by one entry. */
+    public static final int ENTRY_BYTES = 24;
+
+    private static final int DEPTH_BITS = 8;
+    private static final int BOUND_BITS = 2;
+    private static final int MOVE_BITS = 16;
+    private static final int BOUND_SHIFT = DEPTH_BITS;
+    private static final int MOVE_SHIFT = BOUND_SHIFT + BOUND_BITS;
+    private static final int GENERATION_SHIFT = MOVE_SHIFT + MOVE_BITS;
+
+    private final long[] keys;
+    private final long[] scores;
+    private final long[] infos;
+    private final int mask;
+    private int generation = 1;
+
+    /**
+     * Creates a table using at most the given number of megabytes. The number of
+     * entries is rounded down to a power of two.
+     */
+    public TranspositionTable(int megabytes) {
+        long entries = Math.max(1, (long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        int capacity = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        keys = new long[capacity];
+        scores = new long[capacity];
+        infos = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the number of entries in the table.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Starts a new search. Entries from earlier searches are kept and can still
+     * be found, but are replaced by any new entry.
+     */
+    public void newSearch() {
+        generation = generation == 0xFFFF ? 1 : generation + 1;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(scores, 0);
+        Arrays.fill(infos, 0);
+    }
+
+    /**
+     * Result of a lookup, filled in by {@link #probe}. Searches keep one instance
+     * per thread and reuse it.
+     */
+    public static class Entry {
+        public int depth;
+        public int bound;
+        public double score;
+        /** Square of the best move, or -1 if none. */
+        public int move;
+    }
+
+    /**
+     * Looks up the given hash. If there is an entry for it, its contents are
+     * copied into {@code entry} and true is returned.
+     */
+    public boolean probe(long hash, Entry entry) {
+        int i = index(hash);
+        long info = infos[i];
+        long scoreBits = scores[i];
+        if (info == 0 || (keys[i] ^ scoreBits ^ info) != hash)
+            return false;
+        entry.depth = (int) (info & ((1 << DEPTH_BITS) - 1));
+        entry.bound = (int) ((info >>> BOUND_SHIFT) & ((1 << BOUND_BITS) - 1));
+        entry.move = (int) ((info >>> MOVE_SHIFT) & ((1 << MOVE_BITS) - 1)) - 1;
+        entry.score = Double.longBitsToDouble(scoreBits);
+        return true;
+    }
+
+    /**
+     * Stores a search result, unless the slot holds a deeper result for another
+     * position from the current search.
+     *
+     * @param move square of the best move, or -1 if none.
+     */
+    public void store(long hash, int depth, int bound, double score, int move) {
+        int i = index(hash);
+        long old = infos[i];
+        boolean sameKey = (keys[i] ^ scores[i] ^ old) == hash;
+        if (old != 0 && !sameKey && (int) (old >>> GENERATION_SHIFT) == generation
+                && (int) (old & ((1 << DEPTH_BITS) - 1)) > depth)
+            return;
+        if (move < 0 && sameKey)
+            move = (int) ((old >>> MOVE_SHIFT) & ((1 << MOVE_BITS) - 1)) - 1;
+        long info = Math.min(depth, (1 << DEPTH_BITS) - 1)
+                | (long) bound << BOUND_SHIFT
+                | (long) (move + 1) << MOVE_SHIFT
+                | (long) generation << GENERATION_SHIFT;
+        long scoreBits = Double.doubleToRawLongBits(score);
+        keys[i] = hash ^ scoreBits ^ info;
+        scores[i] = scoreBits;
+        infos[i] = info;
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,159 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Fits the weights of a PatternEvaluator to the positions of a TrainingData
+ * file, such as written by SelfPlay, and writes them to a weight file that
+ * OthelloAIDonathello loads (see PatternEvaluator).
+ *
+ * The weights are fitted by stochastic gradient descent on the squared error
+ * between the evaluation and the label, with a step size per weight that shrinks
+ * with the sum of its squared gradients (AdaGrad), so configurations that are
+ * seen rarely still learn quickly. Every position is also used with the colours
+ * swapped. The file is read once per epoch as a stream, so the memory used is
+ * that of the weights, whatever the number of positions. Every -holdout'th
+ * position is not trained on, but used to report the error on positions the
+ * weights have not seen.
+ *
+ * Usage: java WeightFitter [-phases N] [-epochs N] [-rate R] [-holdout N] [-in file] [-out file]
+ * Defaults: 8 phases, 4 epochs, rate 2, every 10th position held out,
+ * selfplay.data, patterns.weights.
+ */
+public class WeightFitter {
+
+    private final PatternEvaluator evaluator;
+    private final PatternSet patterns;
+    private final double rate;
+    // Sums of the squared gradients of the weights, per phase like the weights
+    private final float[][] squares;
+    private final float[] sideToMoveSquares;
+    private final int[] indices;
+    private final int[] weightIndices;
+
+    /**
+     * Creates a fitter that changes the weights of the given evaluator, with the
+     * given initial step size.
+     */
+    public WeightFitter(PatternEvaluator evaluator, double rate) {
+        this.evaluator = evaluator;
+        this.patterns = evaluator.getPatterns();
+        this.rate = rate;
+        squares = new float[evaluator.getPhases()][evaluator.getWeights(0).length];
+        sideToMoveSquares = new float[evaluator.getPhases()];
+        indices = new int[patterns.instances()];
+        weightIndices = new int[patterns.instances()];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int phases = 8;
+        int epochs = 4;
+        double rate = 2;
+        int holdout = 10;
+        String in = "selfplay.data";
+        String out = "patterns.weights";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-phases": phases = Integer.parseInt(args[++i]); break;
+                case "-epochs": epochs = Integer.parseInt(args[++i]); break;
+                case "-rate": rate = Double.parseDouble(args[++i]); break;
+                case "-holdout": holdout = Integer.parseInt(args[++i]); break;
+                case "-in": in = args[++i]; break;
+                case "-out": out = args[++i]; break;
+                default:
+                    System.err.println("Usage: java WeightFitter [-phases N] [-epochs N] [-rate R] [-holdout N] "
+                            + "[-in file] [-out file]");
+                    System.exit(1);
+            }
+        }
+
+        Path data = Paths.get(in);
+        int size;
+        try (TrainingData.Reader reader = new TrainingData.Reader(data)) {
+            size = reader.size;
+        }
+        PatternEvaluator evaluator = new PatternEvaluator(size, phases);
+        WeightFitter fitter = new WeightFitter(evaluator, rate);
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            long start = System.nanoTime();
+            double trainError = 0;
+            double testError = 0;
+            double testBaseline = 0;
+            long trained = 0;
+            long tested = 0;
+            try (TrainingData.Reader reader = new TrainingData.Reader(data)) {
+                for (long n = 0; reader.next(); n++) {
+                    if (holdout > 0 && n % holdout == 0) {
+                        double error = fitter.error(reader.black, reader.white, reader.player, reader.label);
+                        testError += error * error;
+                        testBaseline += (double) reader.label * reader.label;
+                        tested++;
+                    } else {
+                        double error = fitter.train(reader.black, reader.white, reader.player, reader.label);
+                        double swapped = fitter.train(reader.white, reader.black, 3 - reader.player, -reader.label);
+                        trainError += (error * error + swapped * swapped) / 2;
+                        trained++;
+                    }
+                }
+            }
+            System.out.printf("Epoch %d: %d positions, training error %.2f, held out error %.2f (%.2f for 0),"
+                    + " in %.1fs%n", epoch, trained, rms(trainError, trained), rms(testError, tested),
+                    rms(testBaseline, tested), (System.nanoTime() - start) / 1e9);
+        }
+        evaluator.write(Paths.get(out));
+        System.out.println("Wrote " + out);
+    }
+
+    private static double rms(double sumOfSquares, long count) {
+        return count == 0 ? 0 : Math.sqrt(sumOfSquares / count);
+    }
+
+    /**
+     * Returns the label minus the evaluation of the position with the given discs
+     * and player in turn.
+     */
+    public double error(long[] black, long[] white, int player, int label) {
+        int phase = lookUp(black, white);
+        float[] weights = evaluator.getWeights(phase);
+        float sideToMove = evaluator.getSideToMoveWeights()[phase];
+        double value = player == 1 ? sideToMove : -sideToMove;
+        for (int i = 0; i < weightIndices.length; i++) {
+            value += weights[weightIndices[i]];
+        }
+        return label - value;
+    }
+
+    /**
+     * Moves the weights used to evaluate the given position towards its label,
+     * and returns the error before the step (see error).
+     */
+    public double train(long[] black, long[] white, int player, int label) {
+        double error = error(black, white, player, label);
+        if (error == 0) {
+            return error;
+        }
+        int phase = evaluator.phase(BitboardN.count(black) + BitboardN.count(white));
+        float[] weights = evaluator.getWeights(phase);
+        float[] sums = squares[phase];
+        float squared = (float) (error * error);
+        // instances in a symmetric configuration share a weight, which then gets the gradient of each
+        for (int index : weightIndices) {
+            sums[index] += squared;
+        }
+        for (int index : weightIndices) {
+            weights[index] += (float) (rate * error / Math.sqrt(sums[index]));
+        }
+        float sign = player == 1 ? 1 : -1;
+        sideToMoveSquares[phase] += squared;
+        evaluator.getSideToMoveWeights()[phase] += (float) (sign * rate * error / Math.sqrt(sideToMoveSquares[phase]));
+        return error;
+    }
+
+    // Fills weightIndices for the position and returns its phase
+    private int lookUp(long[] black, long[] white) {
+        patterns.indices(black, white, indices);
+        for (int i = 0; i < indices.length; i++) {
+            weightIndices[i] = evaluator.weightIndex(patterns.pattern(i), indices[i]);
+        }
+        return evaluator.phase(BitboardN.count(black) + BitboardN.count(white));
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the weighted sums GameState keeps up to date move by move (see
+ * GameState.setSquareWeights), which OthelloAIDonathello.positionH evaluates
+ * with, equal the full board scan of OthelloAIDonathello.countWeightedTokens.
+ *
+ * Random games are played with makeMove and makePass, and now and then a move
+ * is taken back with unmakeMove; at the end every move is taken back. Both sums
+ * are compared after every move and every undo. Prints the first difference
+ * found, and exits with status 1 if there was one.
+ *
+ * Usage: java WeightedTokensCheck [games] [sizes...]
+ * Defaults: 1000 games on each of 4x4, 6x6, 8x8 and 10x10.
+ */
+public class WeightedTokensCheck {
+
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int[] sizes = {4, 6, 8, 10};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        boolean ok = true;
+        for (int size : sizes) {
+            long[] result = check(size, games, 2018);
+            System.out.println(size + "x" + size + ": " + games + " games, " + result[0] + " checks, "
+                    + result[1] + " differences");
+            ok &= result[1] == 0;
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays the given number of random games on boards of the given size and
+     * returns the number of comparisons made and the number that differed.
+     */
+    public static long[] check(int size, int games, long seed) {
+        OthelloAIDonathello ai = newAI(size);
+        double[] weights = ai.getSquareWeights();
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] moves = new int[size * size];
+        long[] result = new long[2];
+        for (int game = 0; game < games; game++) {
+            GameState s = new GameState(size, 1);
+            s.setSquareWeights(weights);
+            int made = 0;
+            boolean passed = false;
+            while (true) {
+                int n = s.legalMoves(moves);
+                if (n == 0) {
+                    if (passed) {
+                        break;
+                    }
+                    s.makePass();
+                    passed = true;
+                } else {
+                    s.makeMove(moves[random.nextInt(n)]);
+                    passed = false;
+                }
+                made++;
+                compare(ai, s, result, "after move " + made + " of game " + game);
+                if (random.nextInt(4) == 0) {
+                    s.unmakeMove();
+                    made--;
+                    passed = false;
+                    compare(ai, s, result, "after taking back move " + (made + 1) + " of game " + game);
+                }
+            }
+            while (made > 0) {
+                s.unmakeMove();
+                compare(ai, s, result, "after taking back move " + made + " of game " + game);
+                made--;
+            }
+        }
+        return result;
+    }
+
+    private static void compare(OthelloAIDonathello ai, GameState s, long[] result, String where) {
+        double[] counted = ai.countWeightedTokens(s);
+        for (int player = 1; player <= 2; player++) {
+            result[0]++;
+            if (Math.abs(s.getWeightedTokens(player) - counted[player - 1]) > TOLERANCE) {
+                if (result[1] == 0) {
+                    System.out.println("Player " + player + " " + where + ": kept " + s.getWeightedTokens(player)
+                            + ", counted " + counted[player - 1]);
+                }
+                result[1]++;
+            }
+        }
+    }
+
+    /**
+     * Returns an AI whose heatmap for boards of the given size is built, which
+     * happens on its first decideMove.
+     */
+    private static OthelloAIDonathello newAI(int size) {
+        OthelloAIDonathello ai = new OthelloAIDonathello();
+        ai.setOpeningBook(null);
+        ai.setMaxDepth(1);
+        ai.setSearchListener(new SearchListener() {});
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            ai.decideMove(new GameState(size, 1));
+        } finally {
+            System.setOut(out);
+        }
+        return ai;
+    }
+}
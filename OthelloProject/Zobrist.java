@@ -0,0 +1,70 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Random keys for Zobrist hashing of game states.
+ *
+ * The hash of a state is the XOR of the key of every disc on the board and, if
+ * white (player 2) is in turn, the side-to-move key. Keys are generated from a
+ * fixed seed, so a position has the same hash in every run.
+ */
+public final class Zobrist {
+
+    private static final ConcurrentHashMap<Integer, Zobrist> INSTANCES = new ConcurrentHashMap<>();
+
+    private final long[] black;
+    private final long[] white;
+    private final long[] flip;
+
+    /** XOR'ed into the hash when player 2 (white) is in turn. */
+    public final long sideToMove;
+
+    private Zobrist(int size) {
+        int squares = size * size;
+        SplittableRandom random = new SplittableRandom(0x0DE11E110L + size);
+        black = new long[squares];
+        white = new long[squares];
+        flip = new long[squares];
+        for (int sq = 0; sq < squares; sq++) {
+            black[sq] = random.nextLong();
+            white[sq] = random.nextLong();
+            flip[sq] = black[sq] ^ white[sq];
+        }
+        sideToMove = random.nextLong();
+    }
+
+    /**
+     * Returns the (shared) keys for boards with the given number of columns and rows.
+     */
+    public static Zobrist forSize(int size) {
+        return INSTANCES.computeIfAbsent(size, Zobrist::new);
+    }
+
+    /**
+     * Returns the key of a disc of the given player (1 or 2) on square sq.
+     */
+    public long disc(int player, int sq) {
+        return player == 1 ? black[sq] : white[sq];
+    }
+
+    /**
+     * Returns the value to XOR into the hash when the disc on square sq changes colour.
+     */
+    public long flip(int sq) {
+        return flip[sq];
+    }
+
+    /**
+     * Computes the hash of the given discs from scratch.
+     */
+    public long hash(long[] blackDiscs, long[] whiteDiscs, int playerInTurn) {
+        long h = playerInTurn == 2 ? sideToMove : 0;
+        for (int w = 0; w < blackDiscs.length; w++) {
+            for (long b = blackDiscs[w]; b != 0; b &= b - 1)
+                h ^= black[w * 64 + Long.numberOfTrailingZeros(b)];
+            for (long b = whiteDiscs[w]; b != 0; b &= b - 1)
+                h ^= white[w * 64 + Long.numberOfTrailingZeros(b)];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,8 @@
+#!/usr/bin/env bash
+
+HERE=$(dirname $(realpath $0))
+
+cd $HERE
+
+javac *.java
+java Benchmarks "$@"